@@ -0,0 +1,114 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache for the location group of agents, shared by all exports. Events that are organized by the same agent get the location from this cache
+ * instead of reading the metadata file of the agent again. An entry is valid as long as modification date and size of the metadata file are
+ * unchanged. The cache holds a limited number of agents, the least recently used agents are removed first.
+ */
+@Log4j2
+public class AgentLocationCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 2000;
+
+    @Getter
+    private static final AgentLocationCache instance = new AgentLocationCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        private static final long serialVersionUID = -2617306011536658240L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > maximumSize;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final int maximumSize;
+
+    AgentLocationCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Get the location group of an agent from the cache or read it from the metadata file
+     *
+     * @param agentIdentifier process id of the agent
+     * @param metsFile metadata file of the agent
+     * @param loader reads the location group from the metadata file, if it is not cached or the file has changed
+     * @return the location group or null, if the agent has no location
+     * @throws IOException
+     */
+    public MetadataGroupData getLocation(String agentIdentifier, Path metsFile, Loader loader) throws IOException {
+        long lastModified = StorageProvider.getInstance().getLastModifiedDate(metsFile);
+        long size = StorageProvider.getInstance().getFileSize(metsFile);
+        synchronized (this) {
+            CacheEntry entry = entries.get(agentIdentifier);
+            if (entry != null && entry.getLastModified() == lastModified && entry.getSize() == size) {
+                hits.incrementAndGet();
+                return entry.getLocation();
+            }
+        }
+        misses.incrementAndGet();
+        // read outside of the lock, other exports can continue in the meantime
+        MetadataGroupData location = loader.load(metsFile);
+        synchronized (this) {
+            entries.put(agentIdentifier, new CacheEntry(lastModified, size, location));
+        }
+        return location;
+    }
+
+    /**
+     * Remove an agent from the cache
+     *
+     * @param agentIdentifier process id of the agent
+     */
+    public synchronized void invalidate(String agentIdentifier) {
+        entries.remove(agentIdentifier);
+    }
+
+    /**
+     * Remove all agents from the cache
+     */
+    public synchronized void invalidateAll() {
+        log.debug("Clear agent location cache");
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        MetadataGroupData load(Path metsFile) throws IOException;
+    }
+
+    @Data
+    private static class CacheEntry {
+        private final long lastModified;
+        private final long size;
+        // null, if the agent has no location
+        private final MetadataGroupData location;
+    }
+}
@@ -0,0 +1,138 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Runs file copies in parallel. The number of concurrent copies is limited, {@link #submit(CopyTask)} blocks until a slot is available. After the
+ * first failed copy no further copies are started and the error is reported by the next call of {@link #submit(CopyTask)} or {@link #await()}.
+ * 
+ * On java 21 and newer virtual threads are used, otherwise a fixed thread pool.
+ */
+@Log4j2
+public class CopyScheduler implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface CopyTask {
+        void run() throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    // time spent in the copies of each export stage
+    private final Map<String, AtomicLong> busyNanos = new ConcurrentHashMap<>();
+
+    public CopyScheduler(int concurrency) {
+        int limit = Math.max(1, concurrency);
+        this.permits = new Semaphore(limit);
+        this.executor = createExecutor(limit);
+    }
+
+    /**
+     * Schedule a copy task. Blocks if the maximum number of copies is already running.
+     *
+     * @param stage export stage that the copy belongs to, its duration is added to {@link #getBusyNanos()}
+     * @param task the copy to run
+     * @throws IOException if a previous copy failed
+     * @throws InterruptedException if the thread was interrupted while waiting for a free slot
+     */
+    public void submit(String stage, CopyTask task) throws IOException, InterruptedException {
+        throwIfFailed();
+        AtomicLong stageNanos = busyNanos.computeIfAbsent(stage, s -> new AtomicLong());
+        permits.acquire();
+        try {
+            futures.add(executor.submit(() -> {
+                try {
+                    if (failure.get() == null && !Thread.currentThread().isInterrupted()) {
+                        long start = System.nanoTime();
+                        try {
+                            task.run();
+                        } finally {
+                            stageNanos.addAndGet(System.nanoTime() - start);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, new IOException(e));
+                } finally {
+                    permits.release();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw new IOException("Copy scheduler is already closed", e);
+        }
+    }
+
+    /**
+     * Wait until all scheduled copies are finished.
+     *
+     * @throws IOException the first error of a failed copy
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void await() throws IOException, InterruptedException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // tasks catch their exceptions, this can only happen on errors
+            failure.compareAndSet(null, new IOException(e.getCause()));
+        } finally {
+            futures.clear();
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Get the time that the copies of each stage were running. Copies run in parallel, so the sum can be larger than the elapsed time.
+     *
+     * @return the running time of the copies in nanoseconds, by stage
+     */
+    public Map<String, Long> getBusyNanos() {
+        Map<String, Long> result = new HashMap<>();
+        busyNanos.forEach((stage, nanos) -> result.put(stage, nanos.get()));
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void throwIfFailed() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        try {
+            // available since java 21, the plugin is compiled for java 11
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.trace("Virtual threads are not available, use fixed thread pool");
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+}
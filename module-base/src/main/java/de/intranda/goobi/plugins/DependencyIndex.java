@@ -0,0 +1,345 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Index of the data that an exported record takes from other records: the location of related agents and the values of vocabulary records.
+ * Each export replaces the dependencies of its process. When an agent or a vocabulary record is changed, the index returns the processes that
+ * have to be exported again.
+ *
+ * The index is stored as a tab separated text file with one line per dependency: process id, type ('agent' or 'record') and the agent process
+ * id or vocabulary id and record id, separated by a slash. Changed processes are appended to the file as a line with the process id and the type
+ * 'removed', followed by their new dependencies. The file is written completely again when it becomes much larger than the index.
+ */
+@Log4j2
+public class DependencyIndex {
+
+    private static final String SEPARATOR = "\t";
+    private static final String TYPE_AGENT = "agent";
+    private static final String TYPE_RECORD = "record";
+    private static final String TYPE_REMOVED = "removed";
+    // the file is compacted when it has more lines than this and more than twice the lines of a compacted file
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final Map<Path, DependencyIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final Path indexFile;
+
+    // dependencies of each process
+    private final Map<Integer, Dependencies> dependenciesByProcess = new HashMap<>();
+    // processes that depend on an agent
+    private final Map<String, Set<Integer>> processesByAgent = new HashMap<>();
+    // processes that depend on a vocabulary record
+    private final Map<RecordKey, Set<Integer>> processesByRecord = new HashMap<>();
+
+    // processes whose dependencies were changed since the last save
+    private final Set<Integer> changedProcesses = new HashSet<>();
+    // number of dependencies of all processes, this is the size of a compacted file
+    private int dependencyCount;
+    // number of lines in the index file
+    private int fileLines;
+    // the file contains lines that could not be read
+    private boolean compactOnSave;
+
+    private DependencyIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Get the index stored in the given file. The file is read on first access, all exports using the same file share the index.
+     *
+     * @param indexFile the index file
+     * @return the index
+     */
+    public static DependencyIndex getInstance(Path indexFile) {
+        return INDEXES.computeIfAbsent(indexFile, DependencyIndex::load);
+    }
+
+    private static DependencyIndex load(Path indexFile) {
+        DependencyIndex index = new DependencyIndex(indexFile);
+        if (StorageProvider.getInstance().isFileExists(indexFile)) {
+            Map<Integer, Dependencies> entries = new HashMap<>();
+            try (BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(StorageProvider.getInstance().newInputStream(indexFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    index.fileLines++;
+                    if (!index.readLine(line, entries)) {
+                        // e.g. the last line of an interrupted save, the file is written again on the next save
+                        log.warn("Ignoring invalid line '{}' in dependency index {}", line, indexFile);
+                        index.compactOnSave = true;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Cannot read dependency index {}, dependencies are collected again", indexFile, e);
+                entries.clear();
+                index.compactOnSave = true;
+            }
+            entries.forEach(index::add);
+            index.changedProcesses.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Apply a line of the index file to the dependencies read so far
+     *
+     * @return false, if the line is invalid
+     */
+    private boolean readLine(String line, Map<Integer, Dependencies> entries) {
+        String[] parts = line.split(SEPARATOR);
+        try {
+            if (parts.length == 2 && TYPE_REMOVED.equals(parts[1])) {
+                entries.remove(Integer.parseInt(parts[0]));
+                return true;
+            } else if (parts.length == 3 && TYPE_AGENT.equals(parts[1])) {
+                entries.computeIfAbsent(Integer.parseInt(parts[0]), id -> new Dependencies()).addAgent(parts[2]);
+                return true;
+            } else if (parts.length == 3 && TYPE_RECORD.equals(parts[1])) {
+                String[] ids = parts[2].split("/");
+                if (ids.length == 2) {
+                    int vocabularyId = Integer.parseInt(ids[0]);
+                    int recordId = Integer.parseInt(ids[1]);
+                    entries.computeIfAbsent(Integer.parseInt(parts[0]), id -> new Dependencies()).addRecord(vocabularyId, recordId);
+                    return true;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // invalid line
+        }
+        return false;
+    }
+
+    /**
+     * Replace the dependencies of a process with the dependencies of its last export
+     *
+     * @param processId id of the exported process
+     * @param dependencies agents and vocabulary records used by the export
+     */
+    public synchronized void update(int processId, Dependencies dependencies) {
+        Dependencies old = dependenciesByProcess.get(processId);
+        if (old == null ? dependencies.isEmpty() : old.equals(dependencies)) {
+            // repeated exports of an unchanged record do not change the index
+            return;
+        }
+        remove(processId);
+        if (!dependencies.isEmpty()) {
+            add(processId, dependencies);
+        }
+    }
+
+    /**
+     * Remove all dependencies of a process, e.g. if it was not exported
+     *
+     * @param processId id of the process
+     */
+    public synchronized void remove(int processId) {
+        Dependencies old = dependenciesByProcess.remove(processId);
+        if (old == null) {
+            return;
+        }
+        for (String agent : old.getAgents()) {
+            removeFrom(processesByAgent, agent, processId);
+        }
+        for (RecordKey key : old.getRecords()) {
+            removeFrom(processesByRecord, key, processId);
+        }
+        dependencyCount -= old.size();
+        changedProcesses.add(processId);
+    }
+
+    private void add(int processId, Dependencies dependencies) {
+        dependenciesByProcess.put(processId, dependencies);
+        for (String agent : dependencies.getAgents()) {
+            processesByAgent.computeIfAbsent(agent, a -> new HashSet<>()).add(processId);
+        }
+        for (RecordKey key : dependencies.getRecords()) {
+            processesByRecord.computeIfAbsent(key, k -> new HashSet<>()).add(processId);
+        }
+        dependencyCount += dependencies.size();
+        changedProcesses.add(processId);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Integer>> map, K key, int processId) {
+        Set<Integer> processes = map.get(key);
+        if (processes != null) {
+            processes.remove(processId);
+            if (processes.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Get the processes that contain data of the given agent
+     *
+     * @param agentIdentifier process id of the agent
+     * @return ids of the dependent processes
+     */
+    public synchronized Set<Integer> getDependentProcesses(String agentIdentifier) {
+        return new TreeSet<>(processesByAgent.getOrDefault(agentIdentifier, Collections.emptySet()));
+    }
+
+    /**
+     * Get the processes that contain data of the given vocabulary record
+     *
+     * @param vocabularyId id of the vocabulary
+     * @param recordId id of the record
+     * @return ids of the dependent processes
+     */
+    public synchronized Set<Integer> getDependentProcesses(int vocabularyId, int recordId) {
+        return new TreeSet<>(processesByRecord.getOrDefault(new RecordKey(vocabularyId, recordId), Collections.emptySet()));
+    }
+
+    /**
+     * Get the processes that contain data of any record of the given vocabulary
+     *
+     * @param vocabularyId id of the vocabulary
+     * @return ids of the dependent processes
+     */
+    public synchronized Set<Integer> getDependentProcessesOfVocabulary(int vocabularyId) {
+        Set<Integer> processes = new TreeSet<>();
+        processesByRecord.forEach((key, ids) -> {
+            if (key.getVocabularyId() == vocabularyId) {
+                processes.addAll(ids);
+            }
+        });
+        return processes;
+    }
+
+    /**
+     * Get all processes that have to be exported again after the given agents and vocabulary records were changed
+     *
+     * @param changedAgents process ids of the changed agents
+     * @param changedRecords ids of the changed records, grouped by vocabulary id
+     * @return ids of the processes to export
+     */
+    public synchronized Set<Integer> getProcessesToExport(Collection<String> changedAgents, Map<Integer, Set<Integer>> changedRecords) {
+        Set<Integer> processes = new TreeSet<>();
+        for (String agent : changedAgents) {
+            processes.addAll(processesByAgent.getOrDefault(agent, Collections.emptySet()));
+        }
+        changedRecords.forEach((vocabularyId, recordIds) -> {
+            for (Integer recordId : recordIds) {
+                processes.addAll(processesByRecord.getOrDefault(new RecordKey(vocabularyId, recordId), Collections.emptySet()));
+            }
+        });
+        return processes;
+    }
+
+    /**
+     * Write the changes since the last save into the index file. The changed processes are appended to the file. If the file became too large, it
+     * is written completely and replaced only after it was written.
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        if (changedProcesses.isEmpty() && !compactOnSave) {
+            return;
+        }
+        int changedLines = 0;
+        for (Integer processId : changedProcesses) {
+            Dependencies dependencies = dependenciesByProcess.get(processId);
+            changedLines += 1 + (dependencies == null ? 0 : dependencies.size());
+        }
+        if (!compactOnSave && fileLines + changedLines <= Math.max(COMPACTION_THRESHOLD, 2 * dependencyCount)
+                && StorageProvider.getInstance().isFileExists(indexFile)) {
+            try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+                for (Integer processId : changedProcesses) {
+                    writer.write(processId + SEPARATOR + TYPE_REMOVED);
+                    writer.newLine();
+                    Dependencies dependencies = dependenciesByProcess.get(processId);
+                    if (dependencies != null) {
+                        write(writer, processId, dependencies);
+                    }
+                }
+            }
+            fileLines += changedLines;
+        } else {
+            Path tempFile = StagingDirectory.getSiblingPath(indexFile, StagingDirectory.STAGING_INFIX);
+            try (BufferedWriter writer =
+                    new BufferedWriter(new OutputStreamWriter(StorageProvider.getInstance().newOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                for (Map.Entry<Integer, Dependencies> entry : dependenciesByProcess.entrySet()) {
+                    write(writer, entry.getKey(), entry.getValue());
+                }
+            }
+            StagingDirectory.move(tempFile, indexFile);
+            fileLines = dependencyCount;
+            compactOnSave = false;
+        }
+        changedProcesses.clear();
+    }
+
+    private static void write(BufferedWriter writer, int processId, Dependencies dependencies) throws IOException {
+        for (String agent : dependencies.getAgents()) {
+            writer.write(processId + SEPARATOR + TYPE_AGENT + SEPARATOR + agent);
+            writer.newLine();
+        }
+        for (RecordKey key : dependencies.getRecords()) {
+            writer.write(processId + SEPARATOR + TYPE_RECORD + SEPARATOR + key.getVocabularyId() + "/" + key.getRecordId());
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Agents and vocabulary records used by a single export
+     */
+    @EqualsAndHashCode
+    public static class Dependencies {
+        private final Set<String> agents = new HashSet<>();
+        private final Set<RecordKey> records = new HashSet<>();
+
+        public void addAgent(String agentIdentifier) {
+            if (agentIdentifier != null) {
+                agents.add(agentIdentifier);
+            }
+        }
+
+        public void addRecord(int vocabularyId, int recordId) {
+            records.add(new RecordKey(vocabularyId, recordId));
+        }
+
+        public Set<String> getAgents() {
+            return Collections.unmodifiableSet(agents);
+        }
+
+        public Set<RecordKey> getRecords() {
+            return Collections.unmodifiableSet(records);
+        }
+
+        public boolean isEmpty() {
+            return agents.isEmpty() && records.isEmpty();
+        }
+
+        public int size() {
+            return agents.size() + records.size();
+        }
+    }
+
+    @Data
+    public static class RecordKey {
+        private final int vocabularyId;
+        private final int recordId;
+    }
+}
@@ -0,0 +1,189 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Parsed and validated content of the plugin configuration file. Instances are immutable and can be shared between all exports.
+ * {@link #getCurrent(String)} returns the configuration of the current file, it is parsed again only when the file was modified.
+ */
+@Getter
+@Log4j2
+public class ExportConfiguration {
+
+    private static final String DEFAULT_DEPENDENCY_INDEX = "luxArtistDictionary_dependencies.tsv";
+    private static final String DEFAULT_EXPORTABILITY_INDEX = "luxArtistDictionary_exportability.tsv";
+    private static final long DEFAULT_EXPORTABILITY_RESCAN_INTERVAL = 0;
+
+    // last parsed configuration of each plugin
+    private static final Map<String, ExportConfiguration> CURRENT = new ConcurrentHashMap<>();
+
+    // modification date of the parsed file
+    @Getter(AccessLevel.NONE)
+    private final long lastModified;
+
+    private final boolean cleanupPagination;
+    private final boolean exportUnpublishedRecords;
+    private final boolean addEventLocationFromAgent;
+    private final String vocabularyBaseUrl;
+    private final int batchThreads;
+    private final boolean incrementalExport;
+    private final boolean incrementalExportUseDigest;
+    private final FileTransferEngine.Strategy fileTransferStrategy;
+    private final int copyThreads;
+    private final boolean stagingExport;
+    private final int vocabularyCacheSize;
+    private final long vocabularyCacheTimeToLive;
+    private final int vocabularyPrefetchThreshold;
+    private final Path dependencyIndexFile;
+    private final Path exportabilityIndexFile;
+    // minutes between two rescans of the metadata folder, 0 if the exportability index is only updated by exports and before exportPublished
+    private final long exportabilityIndexRescanInterval;
+    private final List<MetadataConfiguration> metadataConfigurations;
+    private final List<VocabularyRecordConfig> vocabularyConfigs;
+
+    public ExportConfiguration(XMLConfiguration config) {
+        this(config, 0);
+    }
+
+    private ExportConfiguration(XMLConfiguration config, long lastModified) {
+        this.lastModified = lastModified;
+        cleanupPagination = config.getBoolean("cleanupPagination", false);
+        exportUnpublishedRecords = config.getBoolean("exportUnpublishedRecords", false);
+        addEventLocationFromAgent = config.getBoolean("addEventLocationFromAgent", false);
+        vocabularyBaseUrl = config.getString("vocabularyBaseUrl");
+        batchThreads = Math.max(1, config.getInt("batchThreads", 4));
+        incrementalExport = config.getBoolean("incrementalExport", false);
+        incrementalExportUseDigest = config.getBoolean("incrementalExport[@useDigest]", false);
+        fileTransferStrategy = FileTransferEngine.Strategy.getByName(config.getString("fileTransfer", null));
+        copyThreads = Math.max(1, config.getInt("copyThreads", 1));
+        // an incremental export updates the existing folder, staging is not possible then
+        stagingExport = config.getBoolean("stagingExport", false) && !incrementalExport;
+        vocabularyCacheSize = config.getInt("vocabularyCache[@size]", VocabularyRecordCache.DEFAULT_MAXIMUM_SIZE);
+        vocabularyCacheTimeToLive = config.getLong("vocabularyCache[@timeToLive]", VocabularyRecordCache.DEFAULT_TIME_TO_LIVE / 1000) * 1000;
+        vocabularyPrefetchThreshold = config.getInt("vocabularyCache[@prefetchThreshold]", 10);
+        String indexFile = config.getString("dependencyIndex", null);
+        if (StringUtils.isBlank(indexFile)) {
+            dependencyIndexFile = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), DEFAULT_DEPENDENCY_INDEX);
+        } else {
+            dependencyIndexFile = Paths.get(indexFile);
+        }
+        String exportabilityFile = config.getString("exportabilityIndex", null);
+        if (StringUtils.isBlank(exportabilityFile)) {
+            exportabilityIndexFile = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), DEFAULT_EXPORTABILITY_INDEX);
+        } else {
+            exportabilityIndexFile = Paths.get(exportabilityFile);
+        }
+        exportabilityIndexRescanInterval = Math.max(0, config.getLong("exportabilityIndex[@rescanInterval]", DEFAULT_EXPORTABILITY_RESCAN_INTERVAL));
+        metadataConfigurations = Collections.unmodifiableList(readMetadataConfigurations(config));
+        vocabularyConfigs = Collections.unmodifiableList(readVocabularyRecordConfigs(config));
+    }
+
+    /**
+     * Get the configuration of a plugin. The configuration file is parsed on first access and again after it was modified, otherwise the last
+     * parsed configuration is returned.
+     *
+     * @param pluginTitle title of the plugin
+     * @return the configuration
+     */
+    public static ExportConfiguration getCurrent(String pluginTitle) {
+        long lastModified = getLastModified(pluginTitle);
+        ExportConfiguration current = CURRENT.get(pluginTitle);
+        if (current != null && current.lastModified == lastModified) {
+            return current;
+        }
+        // only the first export after a change parses the file, the others get the new configuration
+        return CURRENT.compute(pluginTitle, (title, previous) -> {
+            if (previous != null && previous.lastModified == lastModified) {
+                return previous;
+            }
+            log.debug("Read configuration of plugin {}", title);
+            return new ExportConfiguration(ConfigPlugins.getPluginConfig(title), lastModified);
+        });
+    }
+
+    private static long getLastModified(String pluginTitle) {
+        Path file = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + pluginTitle + ".xml");
+        try {
+            return StorageProvider.getInstance().getLastModifiedDate(file);
+        } catch (IOException e) {
+            log.debug("Cannot get modification date of {}", file);
+            return -1;
+        }
+    }
+
+    private static List<VocabularyRecordConfig> readVocabularyRecordConfigs(XMLConfiguration configuration) {
+        List<HierarchicalConfiguration> configs = configuration.configurationsAt("vocabulary");
+        if (configs != null) {
+            return configs.stream().map(config -> {
+                String groupType = config.getString("metadataGroupType", null);
+                Integer vocabularyId = config.getInteger("vocabularyId", null);
+                String identifierMetadata = config.getString("recordIdentifierMetadata", null);
+                if (StringUtils.isNotBlank(groupType) && StringUtils.isNotBlank(identifierMetadata) && vocabularyId != null) {
+                    List<HierarchicalConfiguration> enrichConfigs = config.configurationsAt("enrich");
+                    List<VocabularyEnrichment> enrichments = Optional.ofNullable(enrichConfigs).map(ecs -> {
+                        return ecs.stream().map(ec -> {
+                            String md = ec.getString("metadataType", "");
+                            String field = ec.getString("vocabularyField", "");
+                            return new VocabularyEnrichment(field, md);
+                        }).collect(Collectors.toList());
+                    }).orElse(Collections.emptyList());
+                    return new VocabularyRecordConfig(groupType, vocabularyId, identifierMetadata, enrichments);
+                } else {
+                    log.warn("Ignore incomplete vocabulary configuration for group type {}", groupType);
+                    return null;
+                }
+            })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<MetadataConfiguration> readMetadataConfigurations(XMLConfiguration configuration) {
+        List<HierarchicalConfiguration> metadataConfigs = configuration.configurationsAt("metadata");
+        if (metadataConfigs != null) {
+            return metadataConfigs.stream().map(config -> {
+                String type = config.getString("[@type]");
+                boolean force = config.getBoolean("[@force]", false);
+                GenerationRule rule;
+                try {
+                    rule = new GenerationRule(config.getString("rule"), config.getString("rule[@numberFormat]"));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignore metadata configuration for {}, invalid number format: {}", type, e.getMessage());
+                    return null;
+                }
+                if (StringUtils.isNotBlank(type) && StringUtils.isNotBlank(rule.getValue())) {
+                    return new MetadataConfiguration(type, force, rule);
+                } else {
+                    log.warn("Ignore incomplete metadata configuration for type {}", type);
+                    return null;
+                }
+            })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } else {
+            return Collections.emptyList();
+        }
+    }
+}
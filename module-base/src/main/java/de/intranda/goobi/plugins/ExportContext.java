@@ -0,0 +1,55 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.goobi.beans.Process;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * State of a single export. A new context is created for each exported process and passed through all stages, so one plugin instance can run
+ * exports of different processes at the same time. State that is shared by all exports is kept in the {@link ExportSession}.
+ */
+@Getter
+public class ExportContext {
+
+    private final Process process;
+    private final ExportSession session;
+    private final boolean exportImages;
+    private final boolean exportFulltext;
+
+    private final List<String> problems = new ArrayList<>();
+
+    private final ExportStageTimer timer = new ExportStageTimer();
+
+    // content of the source folders, created on first access
+    private final FilesystemSnapshot snapshot = new FilesystemSnapshot();
+
+    // agents and vocabulary records used by the export
+    private final DependencyIndex.Dependencies dependencies = new DependencyIndex.Dependencies();
+
+    // list of previously exported files, only used for incremental exports
+    @Setter
+    private ExportManifest manifest;
+
+    // runs the copies of exportFiles in parallel, if more than one copy thread is configured
+    @Setter
+    private CopyScheduler copyScheduler;
+
+    public ExportContext(Process process, ExportSession session, boolean exportImages, boolean exportFulltext) {
+        this.process = process;
+        this.session = session;
+        this.exportImages = exportImages;
+        this.exportFulltext = exportFulltext;
+    }
+
+    public ExportConfiguration getConfiguration() {
+        return session.getConfiguration();
+    }
+
+    public FileTransferEngine getFileTransferEngine() {
+        return session.getFileTransferEngine();
+    }
+}
@@ -0,0 +1,190 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Data;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * List of all files that were exported into a destination folder during the last export. It is used to copy only new or changed files and to
+ * delete the files that do not exist in the source folders anymore.
+ * 
+ * The manifest is stored as a tab separated text file with one line per file: relative path, size, modification date and optional SHA-1 digest.
+ */
+@Log4j2
+public class ExportManifest {
+
+    private static final String SEPARATOR = "\t";
+
+    private final Path destination;
+    private final Path manifestFile;
+    private final boolean useDigest;
+
+    // files of the previous export
+    private final Map<String, Entry> previousEntries;
+    // files of the current export
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+
+    private ExportManifest(Path destination, Path manifestFile, boolean useDigest, Map<String, Entry> previousEntries) {
+        this.destination = destination;
+        this.manifestFile = manifestFile;
+        this.useDigest = useDigest;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Load the manifest of the previous export. If no manifest exists, an empty one is returned.
+     *
+     * @param destination folder that contains the exported files
+     * @param name name of the manifest file within the destination folder
+     * @param useDigest compare files using a SHA-1 digest in addition to size and modification date
+     * @return the manifest
+     */
+    public static ExportManifest load(Path destination, String name, boolean useDigest) {
+        Path manifestFile = destination.resolve(name);
+        Map<String, Entry> entries = new HashMap<>();
+        if (StorageProvider.getInstance().isFileExists(manifestFile)) {
+            try (BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(StorageProvider.getInstance().newInputStream(manifestFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(SEPARATOR);
+                    if (parts.length >= 3) {
+                        Entry entry = new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts.length > 3 ? parts[3] : null);
+                        entries.put(entry.getPath(), entry);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                log.error("Cannot read export manifest {}, all files are exported again", manifestFile, e);
+                entries.clear();
+            }
+        }
+        return new ExportManifest(destination, manifestFile, useDigest, entries);
+    }
+
+    /**
+     * Check if the target file is up to date. Unchanged files are registered for the current export.
+     *
+     * @param source the source file
+     * @param target the file in the destination folder
+     * @return true if the file was exported before and neither the source nor the exported file were changed since then
+     * @throws IOException
+     */
+    public boolean isUnchanged(Path source, Path target) throws IOException {
+        String relativePath = getRelativePath(target);
+        Entry previous = previousEntries.get(relativePath);
+        if (previous == null || !StorageProvider.getInstance().isFileExists(target)) {
+            return false;
+        }
+        long size = StorageProvider.getInstance().getFileSize(source);
+        long lastModified = StorageProvider.getInstance().getLastModifiedDate(source);
+        if (previous.getSize() != size || previous.getLastModified() != lastModified
+                || StorageProvider.getInstance().getFileSize(target) != size) {
+            return false;
+        }
+        if (useDigest && !Objects.equals(previous.getDigest(), createDigest(source))) {
+            return false;
+        }
+        currentEntries.put(relativePath, previous);
+        return true;
+    }
+
+    /**
+     * Register a file that was copied during the current export.
+     *
+     * @param source the source file
+     * @param target the file in the destination folder
+     * @throws IOException
+     */
+    public void addFile(Path source, Path target) throws IOException {
+        String relativePath = getRelativePath(target);
+        long size = StorageProvider.getInstance().getFileSize(source);
+        long lastModified = StorageProvider.getInstance().getLastModifiedDate(source);
+        String digest = useDigest ? createDigest(source) : null;
+        currentEntries.put(relativePath, new Entry(relativePath, size, lastModified, digest));
+    }
+
+    /**
+     * Delete all files that were exported last time but are not part of the current export.
+     *
+     * @return the number of deleted files
+     * @throws IOException
+     */
+    public int deleteRemovedFiles() throws IOException {
+        int deleted = 0;
+        for (String relativePath : previousEntries.keySet()) {
+            if (!currentEntries.containsKey(relativePath)) {
+                Path file = destination.resolve(relativePath);
+                if (StorageProvider.getInstance().isFileExists(file)) {
+                    StorageProvider.getInstance().deleteFile(file);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Write the files of the current export into the manifest file.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        try (BufferedWriter writer =
+                new BufferedWriter(new OutputStreamWriter(StorageProvider.getInstance().newOutputStream(manifestFile), StandardCharsets.UTF_8))) {
+            for (Entry entry : currentEntries.values()) {
+                writer.write(entry.getPath());
+                writer.write(SEPARATOR);
+                writer.write(String.valueOf(entry.getSize()));
+                writer.write(SEPARATOR);
+                writer.write(String.valueOf(entry.getLastModified()));
+                if (entry.getDigest() != null) {
+                    writer.write(SEPARATOR);
+                    writer.write(entry.getDigest());
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    private String getRelativePath(Path target) {
+        return destination.relativize(target).toString();
+    }
+
+    private static String createDigest(Path file) throws IOException {
+        try (InputStream in = StorageProvider.getInstance().newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Data
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+    }
+}
@@ -0,0 +1,13 @@
+package de.intranda.goobi.plugins;
+
+import org.goobi.beans.Process;
+
+/**
+ * Receives the stage timings of each finished export, including failed exports. The outcome is available from
+ * {@link ExportStageTimer#getOutcome()}. Implementations must be thread safe, as exports can run in parallel.
+ */
+public interface ExportMetricsRegistry {
+
+    void record(Process process, ExportStageTimer timer);
+
+}
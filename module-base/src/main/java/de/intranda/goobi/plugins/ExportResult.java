@@ -0,0 +1,22 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Outcome of the export of a single process within a batch export.
+ */
+@Data
+public class ExportResult {
+
+    private final Integer processId;
+    private final String processTitle;
+    private final boolean successful;
+    private final List<String> problems;
+
+    public static ExportResult failed(Integer processId, String processTitle, String problem) {
+        return new ExportResult(processId, processTitle, false, Collections.singletonList(problem));
+    }
+}
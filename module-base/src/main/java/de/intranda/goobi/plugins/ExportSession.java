@@ -0,0 +1,94 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+
+import org.goobi.beans.Process;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.Getter;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+
+/**
+ * State that is independent of a single process and can be reused by all exports of a batch: the parsed plugin configuration, the file transfer
+ * and the dependency and exportability indexes. Rulesets and vocabulary records are taken from the {@link PrefsCache} and the
+ * {@link VocabularyRecordCache}, which are shared by all exports.
+ */
+public class ExportSession {
+
+    @Getter
+    private final ExportConfiguration configuration;
+
+    @Getter
+    private final FileTransferEngine fileTransferEngine;
+
+    @Getter
+    private final DependencyIndex dependencyIndex;
+
+    @Getter
+    private final ExportabilityIndex exportabilityIndex;
+
+    public ExportSession(ExportConfiguration configuration) {
+        this.configuration = configuration;
+        fileTransferEngine = new FileTransferEngine(configuration.getFileTransferStrategy());
+        dependencyIndex = DependencyIndex.getInstance(configuration.getDependencyIndexFile());
+        exportabilityIndex = ExportabilityIndex.getInstance(configuration.getExportabilityIndexFile());
+        VocabularyRecordCache.getInstance().configure(configuration.getVocabularyCacheSize(), configuration.getVocabularyCacheTimeToLive());
+    }
+
+    /**
+     * Start or update the background rescan of the metadata folder with the configured interval. Only batch exports call it, so that the export of
+     * a single process does not start a scan of all processes.
+     */
+    public void scheduleExportabilityRescan() {
+        exportabilityIndex.scheduleRescan(Paths.get(ConfigurationHelper.getInstance().getMetadataFolder()),
+                configuration.getExportabilityIndexRescanInterval(), configuration.getBatchThreads());
+    }
+
+    /**
+     * Get the ruleset of the given process from the shared {@link PrefsCache}.
+     *
+     * @param process the process to get the ruleset for
+     * @return the parsed ruleset
+     * @throws PreferencesException if the ruleset cannot be parsed
+     * @throws IOException if the ruleset file cannot be accessed
+     */
+    public Prefs getPreferences(Process process) throws PreferencesException, IOException {
+        return PrefsCache.getInstance().getPreferences(process.getRegelsatz());
+    }
+
+    /**
+     * Get a vocabulary record from the shared record cache.
+     *
+     * @param vocabularyId id of the vocabulary
+     * @param recordId id of the record
+     * @return the record or null, if it does not exist
+     */
+    public VocabRecordView getRecord(int vocabularyId, int recordId) {
+        return VocabularyRecordCache.getInstance().getRecord(vocabularyId, recordId);
+    }
+
+    /**
+     * Load the given vocabulary records into the shared record cache.
+     *
+     * @param recordIds record ids, grouped by vocabulary id
+     * @param vocabulariesWithTitles vocabularies that are referenced by record title
+     */
+    public void prefetch(Map<Integer, Set<Integer>> recordIds, Set<Integer> vocabulariesWithTitles) {
+        VocabularyRecordCache.getInstance().prefetch(recordIds, vocabulariesWithTitles, configuration.getVocabularyPrefetchThreshold());
+    }
+
+    /**
+     * Find a vocabulary record by its title, using the title index of the shared record cache.
+     *
+     * @param vocabularyId id of the vocabulary
+     * @param title title of the record
+     * @return the record or null, if it does not exist
+     */
+    public VocabRecordView getRecordByTitle(int vocabularyId, String title) {
+        return VocabularyRecordCache.getInstance().getRecordByTitle(vocabularyId, title);
+    }
+}
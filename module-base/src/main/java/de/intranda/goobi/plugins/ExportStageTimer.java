@@ -0,0 +1,176 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Collects the duration of each stage of a single export. Copy stages additionally collect the number and size of the copied files. A stage can be
+ * a sub-stage of another stage, its duration is then already contained in the duration of the parent and not counted again in the total.
+ */
+public class ExportStageTimer {
+
+    public static final String OUTCOME_EXPORTED = "exported";
+    public static final String OUTCOME_SKIPPED = "skipped";
+    public static final String OUTCOME_FAILED = "failed";
+
+    private final Map<String, Stage> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    // result of the export, set when the export has finished
+    @Getter
+    @Setter
+    private volatile String outcome;
+
+    /**
+     * Start measuring a stage. The measurement ends when the returned object is closed, use it in a try-with-resources block. If a stage is
+     * measured more than once, the durations are summed up.
+     *
+     * @param name name of the stage
+     * @return the running measurement
+     */
+    public Measurement start(String name) {
+        return start(name, null);
+    }
+
+    /**
+     * Start measuring a sub-stage, that runs while the parent stage is measured.
+     *
+     * @param name name of the stage
+     * @param parent name of the parent stage, or null for a top-level stage
+     * @return the running measurement
+     */
+    public Measurement start(String name, String parent) {
+        return new Measurement(getStage(name, parent), System.nanoTime());
+    }
+
+    /**
+     * Register a copied file for a stage.
+     *
+     * @param name name of the stage
+     * @param bytes size of the file
+     */
+    public void addFile(String name, long bytes) {
+        Stage stage = getStage(name);
+        synchronized (stage) {
+            stage.files++;
+            stage.bytes += bytes;
+        }
+    }
+
+    /**
+     * Add a duration to stages, divided in proportion to the given weights. Used for time that was spent for several stages at once, e.g.
+     * waiting for parallel copies. If all weights are 0, the duration is added to the fallback stage.
+     *
+     * @param nanos the duration
+     * @param weights weight of each stage
+     * @param fallback name of the stage that gets the duration if no stage has a weight
+     * @param parent name of the stage that contains the duration, or null if it is not measured by any other stage
+     */
+    public void distribute(long nanos, Map<String, Long> weights, String fallback, String parent) {
+        long total = weights.values().stream().mapToLong(Long::longValue).sum();
+        if (total <= 0) {
+            addNanos(fallback, parent, nanos);
+            return;
+        }
+        weights.forEach((name, weight) -> addNanos(name, parent, (long) ((double) nanos * weight / total)));
+    }
+
+    private void addNanos(String name, String parent, long nanos) {
+        Stage stage = getStage(name, parent);
+        synchronized (stage) {
+            stage.nanos += nanos;
+        }
+    }
+
+    public List<Stage> getStages() {
+        synchronized (stages) {
+            return new ArrayList<>(stages.values());
+        }
+    }
+
+    /**
+     * @return the duration of all top-level stages, sub-stages are already contained in their parents
+     */
+    public long getTotalNanos() {
+        return getStages().stream().filter(stage -> stage.getParent() == null).mapToLong(Stage::getNanos).sum();
+    }
+
+    /**
+     * Create a single line summary of all stages, e.g. 'Export timings (exported): enrichFileformat: 12 ms, exportFiles: 1520 ms,
+     * exportFiles/imageDownload: 1400 ms (42 files, 1 GB), total: 1532 ms'
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Export timings");
+        if (outcome != null) {
+            summary.append(" (").append(outcome).append(')');
+        }
+        summary.append(": ");
+        for (Stage stage : getStages()) {
+            if (stage.getParent() != null) {
+                summary.append(stage.getParent()).append('/');
+            }
+            summary.append(stage.getName()).append(": ").append(stage.getNanos() / 1_000_000).append(" ms");
+            if (stage.getFiles() > 0) {
+                summary.append(" (").append(stage.getFiles()).append(" files, ");
+                summary.append(FileUtils.byteCountToDisplaySize(stage.getBytes())).append(')');
+            }
+            summary.append(", ");
+        }
+        summary.append("total: ").append(getTotalNanos() / 1_000_000).append(" ms");
+        return summary.toString();
+    }
+
+    private Stage getStage(String name) {
+        return getStage(name, null);
+    }
+
+    private Stage getStage(String name, String parent) {
+        Stage stage = stages.computeIfAbsent(name, Stage::new);
+        if (parent != null) {
+            // files can be registered before the stage itself is measured
+            stage.parent = parent;
+        }
+        return stage;
+    }
+
+    @Getter
+    public static class Stage {
+        private final String name;
+        // name of the stage that contains this stage, null for top-level stages
+        private volatile String parent;
+        private long nanos;
+        private long bytes;
+        private int files;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Measurement implements AutoCloseable {
+        private final Stage stage;
+        private final long start;
+
+        private Measurement(Stage stage, long start) {
+            this.stage = stage;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            long duration = System.nanoTime() - start;
+            synchronized (stage) {
+                stage.nanos += duration;
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Data;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Index of the publication status of all processes, so that batch exports can select the published records without reading every metadata
+ * file. For each process the index contains the value of the 'Published' metadata, the modification date of the metadata file when it was read
+ * and the date of the last successful export.
+ *
+ * The index is updated after each export and by a rescan of the metadata folder, which reads only the metadata files that were modified since
+ * the last scan. It is stored as a tab separated text file with one line per process: process id, published ('Y' or 'N'), modification date of
+ * the metadata file and date of the last export, 0 if the process was not exported yet. Changed entries are appended to the file, the last line
+ * of a process is valid. The file is written completely again when it becomes much larger than the index. A line with '#scan' and a date
+ * records the last complete scan of the metadata folder.
+ */
+@Log4j2
+public class ExportabilityIndex {
+
+    private static final String SEPARATOR = "\t";
+    private static final String METADATA_FILE = "meta.xml";
+    private static final String SCAN = "#scan";
+    // the file is compacted when it has more lines than this and more than twice the lines of a compacted file
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final Map<Path, ExportabilityIndex> INDEXES = new ConcurrentHashMap<>();
+
+    // runs the background rescans of all indexes
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "exportability-index-rescan");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path indexFile;
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    // processes whose entry was changed since the last save
+    private final Set<Integer> changedProcesses = new HashSet<>();
+    // number of lines in the index file
+    private int fileLines;
+    // entries were removed or the file contains lines that could not be read
+    private boolean compactOnSave;
+    // start of the last complete scan of the metadata folder, 0 if the folder was never scanned
+    private long lastScan;
+    private boolean lastScanChanged;
+
+    // only one scan of the metadata folder at a time
+    private final Object scanLock = new Object();
+
+    // background rescan of this index, guarded by SCHEDULER
+    private ScheduledFuture<?> scheduledRescan;
+    private long rescanInterval;
+
+    private ExportabilityIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Get the index stored in the given file. The file is read on first access, all exports using the same file share the index.
+     *
+     * @param indexFile the index file
+     * @return the index
+     */
+    public static ExportabilityIndex getInstance(Path indexFile) {
+        return INDEXES.computeIfAbsent(indexFile, ExportabilityIndex::load);
+    }
+
+    private static ExportabilityIndex load(Path indexFile) {
+        ExportabilityIndex index = new ExportabilityIndex(indexFile);
+        if (StorageProvider.getInstance().isFileExists(indexFile)) {
+            try (BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(StorageProvider.getInstance().newInputStream(indexFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    index.fileLines++;
+                    if (!index.readLine(line)) {
+                        // e.g. the last line of an interrupted save, the file is written again on the next save
+                        log.warn("Ignoring invalid line '{}' in exportability index {}", line, indexFile);
+                        index.compactOnSave = true;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Cannot read exportability index {}, the metadata files are read again", indexFile, e);
+                index.entries.clear();
+                index.lastScan = 0;
+                index.compactOnSave = true;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Apply a line of the index file to the entries read so far
+     *
+     * @return false, if the line is invalid
+     */
+    private boolean readLine(String line) {
+        String[] parts = line.split(SEPARATOR);
+        try {
+            if (parts.length == 2 && SCAN.equals(parts[0])) {
+                lastScan = Long.parseLong(parts[1]);
+                return true;
+            } else if (parts.length == 4) {
+                int processId = Integer.parseInt(parts[0]);
+                entries.put(processId, new Entry(processId, "Y".equals(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                return true;
+            }
+        } catch (NumberFormatException e) {
+            // invalid line
+        }
+        return false;
+    }
+
+    /**
+     * Check the values of the 'Published' metadata of a record
+     *
+     * @param values the values
+     * @return true, if any value is Y or J
+     */
+    public static boolean isPublished(Collection<String> values) {
+        return values.stream().anyMatch(value -> value != null && value.matches("[YyJj]"));
+    }
+
+    /**
+     * Read the 'Published' metadata of the top logical element, without parsing the complete file
+     *
+     * @param metsFile the metadata file
+     * @return true, if the record is marked as published, or null if the file has no logical dmdSec and the status is unknown
+     * @throws IOException if the file cannot be read
+     */
+    public static Boolean readPublished(Path metsFile) throws IOException {
+        List<String> values = MetadataGroupReader.readValues(metsFile, "Published");
+        return values == null ? null : isPublished(values);
+    }
+
+    /**
+     * Store the status of a process after it was exported
+     *
+     * @param processId id of the process
+     * @param published value of the 'Published' metadata
+     * @param metadataLastModified modification date of the metadata file that was exported
+     */
+    public synchronized void recordExport(int processId, boolean published, long metadataLastModified) {
+        entries.put(processId, new Entry(processId, published, metadataLastModified, System.currentTimeMillis()));
+        changedProcesses.add(processId);
+    }
+
+    /**
+     * Store the status of a process that was not exported, the date of the last export is kept
+     *
+     * @param processId id of the process
+     * @param published value of the 'Published' metadata
+     * @param metadataLastModified modification date of the metadata file that was read
+     */
+    public synchronized void recordStatus(int processId, boolean published, long metadataLastModified) {
+        Entry old = entries.get(processId);
+        Entry entry = new Entry(processId, published, metadataLastModified, old == null ? 0 : old.getLastExport());
+        if (!entry.equals(old)) {
+            entries.put(processId, entry);
+            changedProcesses.add(processId);
+        }
+    }
+
+    /**
+     * Get the stored status of a process
+     *
+     * @param processId id of the process
+     * @return the status or null, if the process is not in the index
+     */
+    public synchronized Entry getEntry(int processId) {
+        return entries.get(processId);
+    }
+
+    /**
+     * Check if the metadata folder was scanned completely. Before the first scan the index contains only the processes that were exported.
+     *
+     * @return true, if the index contains all processes
+     */
+    public synchronized boolean isScanned() {
+        return lastScan > 0;
+    }
+
+    /**
+     * Get all processes that are marked as published
+     *
+     * @return ids of the processes
+     */
+    public synchronized Set<Integer> getPublishedProcesses() {
+        Set<Integer> processes = new TreeSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isPublished()) {
+                processes.add(entry.getProcessId());
+            }
+        }
+        return processes;
+    }
+
+    /**
+     * Get the published processes whose metadata file was modified after their last export, or which were not exported yet
+     *
+     * @return ids of the processes
+     */
+    public synchronized Set<Integer> getChangedPublishedProcesses() {
+        Set<Integer> processes = new TreeSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isPublished() && entry.getMetadataLastModified() > entry.getLastExport()) {
+                processes.add(entry.getProcessId());
+            }
+        }
+        return processes;
+    }
+
+    /**
+     * Read the publication status of all processes in the metadata folder whose metadata file was modified since it was read the last time.
+     * Processes that no longer exist are removed from the index. The files are read in parallel, the index is saved afterwards. Only one scan of
+     * the index runs at a time.
+     *
+     * @param metadataFolder the metadata folder of Goobi, containing a folder for each process
+     * @param threads number of files that are read in parallel
+     * @return number of files that were read
+     * @throws IOException if the metadata folder cannot be listed or the index cannot be saved
+     * @throws InterruptedException if the scan was interrupted
+     */
+    public int rescan(Path metadataFolder, int threads) throws IOException, InterruptedException {
+        synchronized (scanLock) {
+            return scan(metadataFolder, threads);
+        }
+    }
+
+    private int scan(Path metadataFolder, int threads) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        StorageProvider storageProvider = StorageProvider.getInstance();
+        Map<Integer, Path> metadataFiles = new HashMap<>();
+        for (Path folder : storageProvider.listFiles(metadataFolder.toString())) {
+            Path metsFile = folder.resolve(METADATA_FILE);
+            String name = folder.getFileName().toString();
+            if (name.matches("\\d+") && storageProvider.isFileExists(metsFile)) {
+                metadataFiles.put(Integer.valueOf(name), metsFile);
+            }
+        }
+        synchronized (this) {
+            if (entries.keySet().retainAll(metadataFiles.keySet())) {
+                compactOnSave = true;
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        int read = 0;
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(metadataFiles.size());
+            for (Map.Entry<Integer, Path> file : metadataFiles.entrySet()) {
+                futures.add(executor.submit(() -> update(file.getKey(), file.getValue())));
+            }
+            for (Future<Boolean> future : futures) {
+                try {
+                    if (future.get()) {
+                        read++;
+                    }
+                } catch (ExecutionException e) {
+                    log.warn("Cannot read the publication status", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        synchronized (this) {
+            lastScan = start;
+            lastScanChanged = true;
+        }
+        save();
+        return read;
+    }
+
+    /**
+     * Remove all entries and read the publication status of all processes in the metadata folder again
+     *
+     * @param metadataFolder the metadata folder of Goobi, containing a folder for each process
+     * @param threads number of files that are read in parallel
+     * @return number of files that were read
+     * @throws IOException if the metadata folder cannot be listed or the index cannot be saved
+     * @throws InterruptedException if the scan was interrupted
+     */
+    public int rebuild(Path metadataFolder, int threads) throws IOException, InterruptedException {
+        synchronized (scanLock) {
+            synchronized (this) {
+                entries.clear();
+                compactOnSave = true;
+            }
+            return scan(metadataFolder, threads);
+        }
+    }
+
+    /**
+     * Read the status of a single process, if its metadata file was modified since it was read the last time
+     *
+     * @return true, if the file was read
+     */
+    private boolean update(int processId, Path metsFile) throws IOException {
+        long lastModified = StorageProvider.getInstance().getLastModifiedDate(metsFile);
+        Entry entry = getEntry(processId);
+        if (entry != null && entry.getMetadataLastModified() == lastModified) {
+            return false;
+        }
+        Boolean published = readPublished(metsFile);
+        if (published == null) {
+            // the status of other file formats is only known after an export, which parses the complete file
+            log.debug("Cannot read the publication status of process {} from {}", processId, metsFile);
+        }
+        recordStatus(processId, Boolean.TRUE.equals(published), lastModified);
+        return true;
+    }
+
+    /**
+     * Rescan the metadata folder regularly in the background. The first scan starts after one interval. Calling it again with the same interval
+     * has no effect, a different interval replaces the previous schedule.
+     *
+     * @param metadataFolder the metadata folder of Goobi
+     * @param intervalMinutes minutes between two scans, 0 to disable the background rescan
+     * @param threads number of files that are read in parallel
+     */
+    public void scheduleRescan(Path metadataFolder, long intervalMinutes, int threads) {
+        synchronized (SCHEDULER) {
+            if (scheduledRescan != null && rescanInterval == intervalMinutes) {
+                return;
+            }
+            if (scheduledRescan != null) {
+                scheduledRescan.cancel(false);
+                scheduledRescan = null;
+            }
+            rescanInterval = intervalMinutes;
+            if (intervalMinutes > 0) {
+                scheduledRescan = SCHEDULER.scheduleWithFixedDelay(() -> {
+                    try {
+                        int read = rescan(metadataFolder, threads);
+                        log.debug("Exportability index {} updated, {} metadata files read", indexFile, read);
+                    } catch (IOException e) {
+                        log.error("Cannot update exportability index {}", indexFile, e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    /**
+     * Write the changes since the last save into the index file. The changed entries are appended to the file. If the file became too large or
+     * entries were removed, it is written completely and replaced only after it was written.
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        if (changedProcesses.isEmpty() && !lastScanChanged && !compactOnSave) {
+            return;
+        }
+        int changedLines = changedProcesses.size() + (lastScanChanged ? 1 : 0);
+        if (!compactOnSave && fileLines + changedLines <= Math.max(COMPACTION_THRESHOLD, 2 * entries.size())
+                && StorageProvider.getInstance().isFileExists(indexFile)) {
+            try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+                if (lastScanChanged) {
+                    writeScan(writer);
+                }
+                for (Integer processId : changedProcesses) {
+                    write(writer, entries.get(processId));
+                }
+            }
+            fileLines += changedLines;
+        } else {
+            Path tempFile = StagingDirectory.getSiblingPath(indexFile, StagingDirectory.STAGING_INFIX);
+            try (BufferedWriter writer =
+                    new BufferedWriter(new OutputStreamWriter(StorageProvider.getInstance().newOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                if (lastScan > 0) {
+                    writeScan(writer);
+                }
+                for (Entry entry : entries.values()) {
+                    write(writer, entry);
+                }
+            }
+            StagingDirectory.move(tempFile, indexFile);
+            fileLines = entries.size() + (lastScan > 0 ? 1 : 0);
+            compactOnSave = false;
+        }
+        changedProcesses.clear();
+        lastScanChanged = false;
+    }
+
+    private void writeScan(BufferedWriter writer) throws IOException {
+        writer.write(SCAN + SEPARATOR + lastScan);
+        writer.newLine();
+    }
+
+    private static void write(BufferedWriter writer, Entry entry) throws IOException {
+        writer.write(entry.getProcessId() + SEPARATOR + (entry.isPublished() ? "Y" : "N") + SEPARATOR + entry.getMetadataLastModified() + SEPARATOR
+                + entry.getLastExport());
+        writer.newLine();
+    }
+
+    /**
+     * Rebuild an index from the command line: metadata folder, index file and optionally the number of threads
+     *
+     * @param args the arguments
+     * @throws Exception if the index cannot be rebuilt
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ExportabilityIndex <metadata folder> <index file> [threads]");
+            System.exit(1);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        ExportabilityIndex index = getInstance(Paths.get(args[1]));
+        int read = index.rebuild(Paths.get(args[0]), threads);
+        System.out.println(read + " metadata files read, " + index.getPublishedProcesses().size() + " published records");
+    }
+
+    @Data
+    public static class Entry {
+        private final int processId;
+        private final boolean published;
+        // modification date of the metadata file when the status was read
+        private final long metadataLastModified;
+        // date of the last successful export, 0 if the process was not exported
+        private final long lastExport;
+    }
+}
@@ -0,0 +1,130 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import de.sub.goobi.helper.NIOFileUtils;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Copies single files into the export folder. If the files are stored on a local file system, the copy can be done with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} or by creating a hard link. In all other cases the copy is
+ * delegated to the {@link StorageProvider}.
+ */
+@Log4j2
+public class FileTransferEngine {
+
+    public enum Strategy {
+        /**
+         * always use the configured storage provider
+         */
+        STORAGE_PROVIDER,
+        /**
+         * use {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, the kernel can copy the data without moving it
+         * through the java heap
+         */
+        CHANNEL,
+        /**
+         * create a hard link, if source and target are on the same file system. Otherwise use {@link #CHANNEL}
+         */
+        HARDLINK;
+
+        public static Strategy getByName(String name) {
+            for (Strategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(name)) {
+                    return strategy;
+                }
+            }
+            return STORAGE_PROVIDER;
+        }
+    }
+
+    @Getter
+    private final Strategy strategy;
+
+    private final boolean localStorage;
+
+    public FileTransferEngine(Strategy strategy) {
+        this(strategy, StorageProvider.getInstance() instanceof NIOFileUtils);
+    }
+
+    FileTransferEngine(Strategy strategy, boolean localStorage) {
+        this.strategy = strategy;
+        this.localStorage = localStorage;
+    }
+
+    /**
+     * Copy a single file. An existing target file gets replaced.
+     *
+     * @param source file to copy
+     * @param target destination of the file
+     * @throws IOException
+     */
+    public void copy(Path source, Path target) throws IOException {
+        if (strategy == Strategy.STORAGE_PROVIDER || !localStorage || !isDefaultFileSystem(source) || !isDefaultFileSystem(target)) {
+            StorageProvider.getInstance().copyFile(source, target);
+            return;
+        }
+        if (strategy == Strategy.HARDLINK && createLink(source, target)) {
+            return;
+        }
+        transfer(source, target);
+    }
+
+    private boolean createLink(Path source, Path target) {
+        try {
+            if (!Files.getFileStore(source).equals(Files.getFileStore(target.getParent()))) {
+                return false;
+            }
+            Files.deleteIfExists(target);
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            log.debug("Cannot create link from {} to {}, copy file instead: {}", source, target, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Copy the file into a temporary sibling of the target and rename it afterwards. An existing target may be a hard link to the source or
+     * another master file from an earlier export, so it must be replaced and never be overwritten in place.
+     */
+    private void transfer(Path source, Path target) throws IOException {
+        Path tempFile = StagingDirectory.getSiblingPath(target, StagingDirectory.STAGING_INFIX);
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if (transferred == 0) {
+                        // the source got shorter during the copy, the temporary file is deleted
+                        throw new IOException("File " + source + " was truncated while it was copied, copied " + position + " of " + size + " bytes");
+                    }
+                    position += transferred;
+                }
+            }
+            Files.setLastModifiedTime(tempFile, Files.getLastModifiedTime(source));
+            try {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static boolean isDefaultFileSystem(Path path) {
+        return path.getFileSystem() == FileSystems.getDefault();
+    }
+}
@@ -0,0 +1,167 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Content of the source folders of a single export. Each folder is listed only once. All further questions about existence, emptiness or
+ * content of a folder are answered from memory. Listing a folder only reads the names of its entries, whether an entry is a directory is checked
+ * when it is asked for the first time.
+ * 
+ * The snapshot must only be used for folders that are not modified during the export.
+ */
+@Log4j2
+public class FilesystemSnapshot {
+
+    private static final Folder MISSING = new Folder(false, Collections.emptyMap());
+
+    private final Map<Path, Folder> folders = new ConcurrentHashMap<>();
+
+    /**
+     * Check if a folder exists
+     * 
+     * @param folder the folder
+     * @return true if it exists and is a directory
+     */
+    public boolean isFolderExists(Path folder) {
+        return getFolder(folder).isExists();
+    }
+
+    /**
+     * Check if a folder is missing or does not contain any file
+     * 
+     * @param folder the folder
+     * @return true if the folder has no content
+     */
+    public boolean isEmpty(Path folder) {
+        return getFolder(folder).getEntries().isEmpty();
+    }
+
+    /**
+     * Check if a path is a directory. If the parent folder was read before, the answer is taken from its content.
+     * 
+     * @param path the path to check
+     * @return true, if the path is a directory
+     */
+    public boolean isDirectory(Path path) {
+        Path parent = path.getParent();
+        if (parent != null) {
+            Folder parentFolder = folders.get(parent);
+            if (parentFolder != null && parentFolder.getEntries().containsKey(path)) {
+                return parentFolder.getEntries().get(path).isDirectory();
+            }
+        }
+        return getFolder(path).isExists();
+    }
+
+    /**
+     * Get all files and sub folders of a folder, in the order of {@link StorageProvider#listFiles(String)}
+     * 
+     * @param folder the folder
+     * @return a modifiable copy of the content
+     */
+    public List<Path> listFiles(Path folder) {
+        return new ArrayList<>(getFolder(folder).getEntries().keySet());
+    }
+
+    /**
+     * Get the content of a folder that is accepted by the given filter
+     * 
+     * @param folder the folder
+     * @param filter the filter to apply
+     * @return a modifiable copy of the filtered content
+     */
+    public List<Path> listFiles(Path folder, DirectoryStream.Filter<Path> filter) {
+        List<Path> files = new ArrayList<>();
+        for (Path file : getFolder(folder).getEntries().keySet()) {
+            try {
+                if (filter.accept(file)) {
+                    files.add(file);
+                }
+            } catch (IOException e) {
+                log.error("Cannot filter file {}", file, e);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get the file names in a folder
+     * 
+     * @param folder the folder
+     * @return the names of all files and sub folders
+     */
+    public List<String> list(Path folder) {
+        return getFolder(folder).getEntries().keySet().stream().map(p -> p.getFileName().toString()).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the names of all sub folders
+     * 
+     * @param folder the folder
+     * @return the names of the sub folders
+     */
+    public List<String> listDirNames(Path folder) {
+        return getFolder(folder).getEntries()
+                .values()
+                .stream()
+                .filter(Entry::isDirectory)
+                .map(e -> e.getPath().getFileName().toString())
+                .collect(Collectors.toList());
+    }
+
+    private Folder getFolder(Path folder) {
+        return folders.computeIfAbsent(folder, this::readFolder);
+    }
+
+    private Folder readFolder(Path folder) {
+        if (!StorageProvider.getInstance().isFileExists(folder) || !StorageProvider.getInstance().isDirectory(folder)) {
+            return MISSING;
+        }
+        Map<Path, Entry> entries = new LinkedHashMap<>();
+        for (Path file : StorageProvider.getInstance().listFiles(folder.toString())) {
+            entries.put(file, new Entry(file));
+        }
+        return new Folder(true, Collections.unmodifiableMap(entries));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Folder {
+        private final boolean exists;
+        private final Map<Path, Entry> entries;
+    }
+
+    private static class Entry {
+        @Getter
+        private final Path path;
+        // checked on first access
+        private volatile Boolean directory;
+
+        private Entry(Path path) {
+            this.path = path;
+        }
+
+        private boolean isDirectory() {
+            Boolean result = directory;
+            if (result == null) {
+                result = StorageProvider.getInstance().isDirectory(path);
+                directory = result;
+            }
+            return result;
+        }
+    }
+}
@@ -2,23 +2,42 @@ package de.intranda.goobi.plugins;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
 import de.sub.goobi.helper.VariableReplacer;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
+/**
+ * Rule to generate a metadata value. The rule is compiled once when it is created and can be used by multiple threads.
+ */
 @Data
 public class GenerationRule {
 
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+    private static final Pattern ZERO_PADDING_PATTERN = Pattern.compile("0+");
+
     private final String value;
     private final String numberFormat;
 
+    // width of the zero padding, if the number format contains only zeros, otherwise -1
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final int zeroPadding;
+
+    // DecimalFormat is not thread safe, each thread gets its own copy
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final ThreadLocal<NumberFormat> format;
+
     public GenerationRule(String value) {
         this(value, null);
     }
@@ -26,36 +45,52 @@ public class GenerationRule {
     public GenerationRule(String value, String numberFormat) {
         this.value = value;
         this.numberFormat = numberFormat;
+        if (StringUtils.isBlank(numberFormat)) {
+            zeroPadding = -1;
+            format = null;
+        } else if (ZERO_PADDING_PATTERN.matcher(numberFormat).matches()) {
+            zeroPadding = numberFormat.length();
+            format = null;
+        } else {
+            zeroPadding = -1;
+            DecimalFormat prototype = new DecimalFormat(numberFormat);
+            format = ThreadLocal.withInitial(() -> (NumberFormat) prototype.clone());
+        }
     }
 
     public String generate(VariableReplacer vr) {
 
         String v = vr == null ? this.value : vr.replace(this.value);
-        if (StringUtils.isNotBlank(numberFormat)) {
-            NumberFormat format = new DecimalFormat(numberFormat);
-            Matcher matcher = Pattern.compile("\\d+").matcher(v);
-            List<Group> groups = new ArrayList<>();
-            while (matcher.find()) {
-                groups.add(new Group(matcher.group(), matcher.start(), matcher.end()));
-            }
-            Collections.reverse(groups);
-            for (Group group : groups) {
-                Long number = Long.parseLong(group.content);
-                v = v.substring(0, group.start) + format.format(number) + v.substring(group.end);
+        if (StringUtils.isBlank(numberFormat) || v == null) {
+            return v;
+        }
+        Matcher matcher = NUMBER_PATTERN.matcher(v);
+        StringBuilder result = null;
+        int end = 0;
+        while (matcher.find()) {
+            if (result == null) {
+                result = new StringBuilder(v.length() + 16);
             }
+            result.append(v, end, matcher.start());
+            appendNumber(result, Long.parseLong(matcher.group()));
+            end = matcher.end();
+        }
+        if (result == null) {
+            return v;
         }
-        return v;
+        result.append(v, end, v.length());
+        return result.toString();
     }
 
-    private class Group {
-        public int start;
-        public int end;
-        public String content;
-
-        public Group(String content, int start, int end) {
-            this.content = content;
-            this.start = start;
-            this.end = end;
+    private void appendNumber(StringBuilder result, long number) {
+        if (zeroPadding > 0) {
+            String digits = Long.toString(number);
+            for (int i = digits.length(); i < zeroPadding; i++) {
+                result.append('0');
+            }
+            result.append(digits);
+        } else {
+            result.append(format.get().format(number));
         }
     }
 
@@ -0,0 +1,78 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.goobi.beans.Process;
+
+import lombok.Getter;
+
+/**
+ * Default metrics registry, aggregates the stage timings of all exports since the start of the application.
+ */
+public class InMemoryExportMetricsRegistry implements ExportMetricsRegistry {
+
+    private final Map<String, StageStatistics> statistics = new ConcurrentHashMap<>();
+
+    // number of exports for each outcome
+    private final Map<String, AtomicLong> outcomes = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(Process process, ExportStageTimer timer) {
+        if (timer.getOutcome() != null) {
+            outcomes.computeIfAbsent(timer.getOutcome(), o -> new AtomicLong()).incrementAndGet();
+        }
+        for (ExportStageTimer.Stage stage : timer.getStages()) {
+            statistics.computeIfAbsent(stage.getName(), StageStatistics::new).add(stage);
+        }
+    }
+
+    /**
+     * Get the aggregated statistics, sorted by stage name.
+     *
+     * @return a copy of the current statistics
+     */
+    public Map<String, StageStatistics> getStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    /**
+     * Get the number of exports for each outcome, e.g. 'exported', 'skipped' or 'failed'.
+     *
+     * @return a copy of the current counts
+     */
+    public Map<String, Long> getOutcomes() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.get()));
+        return counts;
+    }
+
+    public void reset() {
+        statistics.clear();
+        outcomes.clear();
+    }
+
+    @Getter
+    public static class StageStatistics {
+        private final String name;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long totalBytes;
+        private long totalFiles;
+
+        private StageStatistics(String name) {
+            this.name = name;
+        }
+
+        private synchronized void add(ExportStageTimer.Stage stage) {
+            count++;
+            totalNanos += stage.getNanos();
+            maxNanos = Math.max(maxNanos, stage.getNanos());
+            totalBytes += stage.getBytes();
+            totalFiles += stage.getFiles();
+        }
+    }
+}
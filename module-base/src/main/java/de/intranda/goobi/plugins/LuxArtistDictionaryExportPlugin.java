@@ -7,14 +7,22 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
-import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
-import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.goobi.beans.Process;
@@ -25,12 +33,8 @@ import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.plugin.interfaces.IExportPlugin;
 import org.goobi.production.plugin.interfaces.IPlugin;
-import org.goobi.vocabulary.Definition;
 import org.goobi.vocabulary.Field;
-import org.goobi.vocabulary.VocabRecord;
-import org.goobi.vocabulary.Vocabulary;
 
-import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.helper.FilesystemHelper;
 import de.sub.goobi.helper.Helper;
@@ -41,8 +45,9 @@ import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.ExportFileException;
 import de.sub.goobi.helper.exceptions.SwapException;
 import de.sub.goobi.helper.exceptions.UghHelperException;
+import de.sub.goobi.metadaten.MetadatenHelper;
+import de.sub.goobi.persistence.managers.ProcessManager;
 import de.sub.goobi.persistence.managers.PropertyManager;
-import de.sub.goobi.persistence.managers.VocabularyManager;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
@@ -78,6 +83,14 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
     private static final String EXPORT_ERROR_PREFIX = "Export cancelled: ";
     private static final String PROCESS_PROPERTY_PROCESS_STATUS = "ProcessStatus";
 
+    // stage that contains the copy stages
+    private static final String STAGE_FILES = "exportFiles";
+    private static final String STAGE_IMAGES = "imageDownload";
+    private static final String STAGE_FULLTEXT = "fulltextDownload";
+    private static final String STAGE_EXPORT_FOLDER = "exportFolder";
+
+    private static final String MANIFEST_SUFFIX = ".manifest";
+
     private static final List<String> REPRESENTATIVE_IMAGE_SUBJECTS = List.of("Portrait", "Event visual", "Award visual ");
 
     @Getter
@@ -94,8 +107,20 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
     @Setter
     private boolean exportImages;
 
+    /**
+     * Problems of the last export started with {@link #startExport(Process, String)}, as required by the export plugin interface. The value is
+     * only meaningful if the plugin instance is not used by several threads at the same time. Running exports keep their problems in their
+     * {@link ExportContext}, batch exports return them in their {@link ExportResult}.
+     */
+    @Getter
+    private volatile List<String> problems = new ArrayList<>();
+
+    /**
+     * Registry that receives the stage timings of every export
+     */
     @Getter
-    private List<String> problems;
+    @Setter
+    private static ExportMetricsRegistry metricsRegistry = new InMemoryExportMetricsRegistry();
 
     @Override
     public boolean startExport(Process process) throws IOException, InterruptedException, DocStructHasNoTypeException, PreferencesException,
@@ -109,45 +134,245 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
     public boolean startExport(Process process, String destination) throws IOException, InterruptedException, DocStructHasNoTypeException,
             PreferencesException, WriteException, MetadataTypeNotAllowedException, ExportFileException, UghHelperException, ReadException,
             SwapException, DAOException, TypeNotAllowedForParentException {
-        problems = new ArrayList<>();
+        ExportSession session = new ExportSession(ExportConfiguration.getCurrent(title));
+        ExportContext context = new ExportContext(process, session, exportImages, exportFulltext);
+        try {
+            return startLockedExport(context, destination);
+        } finally {
+            problems = context.getProblems();
+            saveIndexes(session);
+        }
+    }
 
+    /**
+     * Export a list of processes. The plugin configuration, the rulesets and the vocabulary records are loaded only once and shared between all
+     * exports. The processes are exported in parallel, the number of concurrent exports is limited by the configured batchThreads. If a rescan
+     * interval is configured, the background rescan of the exportability index is started.
+     *
+     * @param processes the processes to export
+     * @param destination the export folder, if null the dms import root path of each project is used
+     * @return the result of each export, in the same order as the given processes
+     * @throws InterruptedException if the batch was interrupted while waiting for the exports
+     */
+    public List<ExportResult> exportAll(List<Process> processes, String destination) throws InterruptedException {
+        if (processes == null || processes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ExportSession session = new ExportSession(ExportConfiguration.getCurrent(title));
+        session.scheduleExportabilityRescan();
+        int threads = Math.min(session.getConfiguration().getBatchThreads(), processes.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
-            // read mets file
-            Prefs prefs = process.getRegelsatz().getPreferences();
-            Fileformat ff = process.readMetadataFile();
+            List<Future<ExportResult>> futures = new ArrayList<>(processes.size());
+            for (Process process : processes) {
+                // each export gets its own context, the flags of the plugin are read before any export starts
+                ExportContext context = new ExportContext(process, session, exportImages, exportFulltext);
+                futures.add(executor.submit(() -> exportInBatch(context, destination)));
+            }
+            List<ExportResult> results = new ArrayList<>(processes.size());
+            for (int i = 0; i < processes.size(); i++) {
+                Process process = processes.get(i);
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.error("Export of process {} failed", process.getId(), e.getCause());
+                    results.add(ExportResult.failed(process.getId(), process.getTitel(), String.valueOf(e.getCause().getMessage())));
+                }
+            }
+            log.debug("Rulesets parsed: {}, reused: {}", PrefsCache.getInstance().getParses(), PrefsCache.getInstance().getHits());
+            return results;
+        } finally {
+            executor.shutdownNow();
+            saveIndexes(session);
+        }
+    }
 
-            XMLConfiguration config = getConfig();
+    /**
+     * Export all processes that are marked as published in the exportability index, without reading their metadata files first. If the metadata
+     * folder was never scanned, it is scanned before the processes are selected.
+     *
+     * @param destination the export folder, if null the dms import root path of each project is used
+     * @param changedOnly export only processes whose metadata file was modified after their last export
+     * @return the result of each export
+     * @throws InterruptedException if the batch was interrupted while waiting for the exports
+     */
+    public List<ExportResult> exportPublished(String destination, boolean changedOnly) throws InterruptedException {
+        ExportConfiguration config = ExportConfiguration.getCurrent(title);
+        ExportabilityIndex index = ExportabilityIndex.getInstance(config.getExportabilityIndexFile());
+        if (!index.isScanned()) {
+            // without a complete scan the index contains only the processes that were exported before
+            try {
+                index.rescan(Paths.get(ConfigurationHelper.getInstance().getMetadataFolder()), config.getBatchThreads());
+            } catch (IOException e) {
+                log.error("Cannot scan the metadata folder, the exportability index is incomplete", e);
+            }
+        }
+        index.scheduleRescan(Paths.get(ConfigurationHelper.getInstance().getMetadataFolder()), config.getExportabilityIndexRescanInterval(),
+                config.getBatchThreads());
+        Set<Integer> processIds = changedOnly ? index.getChangedPublishedProcesses() : index.getPublishedProcesses();
+        List<Process> processes = new ArrayList<>(processIds.size());
+        for (Integer processId : processIds) {
+            Process process = ProcessManager.getProcessById(processId);
+            if (process == null) {
+                log.warn("Process {} from the exportability index does not exist", processId);
+            } else {
+                processes.add(process);
+            }
+        }
+        return exportAll(processes, destination);
+    }
 
-            cleanUpPagination(process, ff, config);
-            String vocabularyBaseUrl = config.getString("vocabularyBaseUrl");
-            List<MetadataConfiguration> additionalMetadata = readMetadataConfigurations(config);
-            List<VocabularyRecordConfig> vocabularyConfigs = readVocabularyRecordConfigs(config);
+    private void saveIndexes(ExportSession session) {
+        try {
+            session.getDependencyIndex().save();
+        } catch (IOException e) {
+            log.error("Cannot save dependency index", e);
+        }
+        try {
+            session.getExportabilityIndex().save();
+        } catch (IOException e) {
+            log.error("Cannot save exportability index", e);
+        }
+    }
 
-            DigitalDocument dd = enrichFileformat(ff, prefs, config, process.getImagesTifDirectory(true));
+    private ExportResult exportInBatch(ExportContext context, String destination) throws Exception {
+        Process process = context.getProcess();
+        String target = destination == null ? process.getProjekt().getDmsImportRootPath() : destination;
+        boolean success = startLockedExport(context, target);
+        return new ExportResult(process.getId(), process.getTitel(), success, context.getProblems());
+    }
 
-            enrichFromVocabulary(prefs, dd, vocabularyConfigs, vocabularyBaseUrl);
+    /**
+     * Export the process, unless another export of the same process is running. Identical requests that arrive during a running export are
+     * coalesced into a single follow-up export, see {@link ProcessExportLock}.
+     */
+    private boolean startLockedExport(ExportContext context, String destination) throws IOException, InterruptedException,
+            DocStructHasNoTypeException, PreferencesException, WriteException, MetadataTypeNotAllowedException, ExportFileException,
+            UghHelperException, ReadException, SwapException, DAOException, TypeNotAllowedForParentException {
+        Process process = context.getProcess();
+        ProcessExportLock.Request request =
+                new ProcessExportLock.Request(process.getId(), destination, context.isExportImages(), context.isExportFulltext());
+        ProcessExportLock.Permit permit = ProcessExportLock.getInstance().acquire(request);
+        if (!permit.isOwner()) {
+            log.debug("Export of process {} was coalesced with a concurrent export", process.getId());
+            context.getProblems().addAll(permit.getProblems());
+            return permit.getResult();
+        }
+        boolean success = false;
+        try {
+            success = startExport(context, destination);
+            return success;
+        } finally {
+            ProcessExportLock.getInstance().release(permit, success, context.getProblems());
+        }
+    }
+
+    private boolean startExport(ExportContext context, String destination) throws IOException, InterruptedException, DocStructHasNoTypeException,
+            PreferencesException, WriteException, MetadataTypeNotAllowedException, ExportFileException, UghHelperException, ReadException,
+            SwapException, DAOException, TypeNotAllowedForParentException {
+        Process process = context.getProcess();
+        ExportSession session = context.getSession();
+        ExportConfiguration config = context.getConfiguration();
+        ExportStageTimer timer = context.getTimer();
+        List<String> problems = context.getProblems();
+
+        // modification date of the exported metadata file, stored in the exportability index
+        long metadataLastModified = 0;
+        // outcome of the export, recorded with the stage timings
+        String outcome = ExportStageTimer.OUTCOME_FAILED;
+        try {
+            // skip unpublished records before the complete file is parsed
+            Boolean published;
+            try (ExportStageTimer.Measurement m = timer.start("checkPublished")) {
+                Path metadataFile = Paths.get(process.getMetadataFilePath());
+                metadataLastModified = StorageProvider.getInstance().getLastModifiedDate(metadataFile);
+                published = readPublished(process, metadataFile);
+            }
+            if (Boolean.FALSE.equals(published) && !config.isExportUnpublishedRecords()) {
+                throw new NotExportableException("Record is not marked as exportable, skip export");
+            }
+
+            // read mets file
+            Prefs prefs;
+            Fileformat ff;
+            try (ExportStageTimer.Measurement m = timer.start("readMetadata")) {
+                prefs = session.getPreferences(process);
+                ff = readMetadataFile(process, prefs);
+            }
+
+            try (ExportStageTimer.Measurement m = timer.start("cleanUpPagination")) {
+                cleanUpPagination(context, ff, prefs);
+            }
+
+            DigitalDocument dd;
+            try (ExportStageTimer.Measurement m = timer.start("enrichFileformat")) {
+                dd = enrichFileformat(context, ff, prefs, process.getImagesTifDirectory(true));
+            }
+
+            try (ExportStageTimer.Measurement m = timer.start("enrichFromVocabulary")) {
+                enrichFromVocabulary(context, prefs, dd);
+            }
 
             // export data
             VariableReplacer vp = new VariableReplacer(dd, prefs, process, null);
             MetsModsImportExport mm = new MetsModsImportExport(prefs);
             mm.setDigitalDocument(dd);
             // Replace rights and digiprov entries.
-            addProjectData(mm, process, vp);
-            addAdditionalMetadata(additionalMetadata, dd, prefs, vp);
-            writeFileGroups(process, dd, vp, mm, config);
-            mm.write(Paths.get(destination, process.getTitel() + ".xml").toString());
+            try (ExportStageTimer.Measurement m = timer.start("addProjectData")) {
+                addProjectData(mm, process, vp);
+            }
+            try (ExportStageTimer.Measurement m = timer.start("addAdditionalMetadata")) {
+                addAdditionalMetadata(context, dd, prefs, vp);
+            }
+            try (ExportStageTimer.Measurement m = timer.start("writeFileGroups")) {
+                writeFileGroups(context, dd, vp, mm);
+            }
+            // when staging is used, the mets file gets its final name after all files are exported
+            Path metsFile = Paths.get(destination, process.getTitel() + ".xml");
+            Path metsTarget = config.isStagingExport() ? StagingDirectory.getSiblingPath(metsFile, StagingDirectory.STAGING_INFIX) : metsFile;
+            try (ExportStageTimer.Measurement m = timer.start("writeMets")) {
+                mm.write(metsTarget.toString());
+            } catch (WriteException e) {
+                addWriteError(problems, metsTarget, e);
+                return false;
+            }
 
-            if (!exportFiles(process, vp, destination)) {
+            boolean filesExported;
+            try (ExportStageTimer.Measurement m = timer.start(STAGE_FILES)) {
+                filesExported = exportFiles(context, vp, destination);
+            }
+            if (config.isStagingExport()) {
+                try {
+                    if (filesExported) {
+                        StagingDirectory.move(metsTarget, metsFile);
+                    } else {
+                        StorageProvider.getInstance().deleteFile(metsTarget);
+                    }
+                } catch (IOException e) {
+                    addWriteError(problems, metsFile, e);
+                    return false;
+                }
+            }
+            if (!filesExported) {
                 log.error("Failed to download images or fulltext files");
                 problems.add("Failed to download images or fulltext files");
                 return false;
             }
             setProcessStatus(process, "Published");
+            session.getDependencyIndex().update(process.getId(), context.getDependencies());
+            // without exportUnpublishedRecords, the export succeeds only for published records
+            session.getExportabilityIndex()
+                    .recordExport(process.getId(), Boolean.TRUE.equals(published) || !config.isExportUnpublishedRecords(), metadataLastModified);
+            outcome = ExportStageTimer.OUTCOME_EXPORTED;
         } catch (ExportException e) {
             log.error(e.getMessage());
             problems.add(e.getMessage());
             return false;
         } catch (NotExportableException e) {
+            // the record is not exported, so it does not depend on other records anymore
+            session.getDependencyIndex().remove(process.getId());
+            session.getExportabilityIndex().recordStatus(process.getId(), false, metadataLastModified);
+            outcome = ExportStageTimer.OUTCOME_SKIPPED;
             generateMessage(process, LogType.DEBUG, e.getMessage());
             return true;
         } catch (ReadException | PreferencesException | WriteException | IOException | SwapException e) {
@@ -156,18 +381,73 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
             return false;
         } catch (UGHException e) {
             log.error(e);
+        } finally {
+            // failed exports are recorded as well, they are the ones that need to be analyzed
+            timer.setOutcome(outcome);
+            recordTimings(context);
         }
 
         return true;
     }
 
-    private void cleanUpPagination(Process process, Fileformat ff, XMLConfiguration config) throws UGHException, IOException, SwapException {
+    /**
+     * Report a metadata file that could not be written into the export folder. These are export errors, not problems of the metadata file of the
+     * process.
+     */
+    private void addWriteError(List<String> problems, Path metsFile, Exception e) {
+        log.error("Cannot write metadata file {}", metsFile, e);
+        problems.add(EXPORT_ERROR_PREFIX + "Cannot write metadata file " + metsFile.getFileName() + ".");
+    }
+
+    /**
+     * Read the metadata file of a process. METS files are read with the cached ruleset, because process.readMetadataFile() would parse the ruleset
+     * again. Files in any other format are read by Goobi, which detects the format.
+     */
+    private Fileformat readMetadataFile(Process process, Prefs prefs) throws IOException, ReadException, PreferencesException, SwapException {
+        String metadataFile = process.getMetadataFilePath();
+        if (!"mets".equals(MetadatenHelper.getMetaFileType(metadataFile))) {
+            return process.readMetadataFile();
+        }
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(metadataFile);
+        return ff;
+    }
+
+    /**
+     * Read the 'Published' metadata of the top logical element without parsing the complete metadata file. If the file cannot be read this
+     * way or has no logical dmdSec, the status is checked by {@link #enrichFileformat(ExportContext, Fileformat, Prefs, String)} after the file
+     * was parsed.
+     *
+     * @return the publication status or null, if it cannot be read
+     */
+    private Boolean readPublished(Process process, Path metadataFile) {
+        try {
+            return ExportabilityIndex.readPublished(metadataFile);
+        } catch (IOException e) {
+            log.warn("Cannot check the publication status of process {}, read the complete file", process.getId(), e);
+            return null;
+        }
+    }
+
+    private void recordTimings(ExportContext context) {
+        Process process = context.getProcess();
+        ExportStageTimer timer = context.getTimer();
+        String summary = timer.getSummary();
+        log.debug("Process {}: {}", process.getId(), summary);
+        generateMessage(process, LogType.DEBUG, summary);
+        if (metricsRegistry != null) {
+            metricsRegistry.record(process, timer);
+        }
+    }
+
+    private void cleanUpPagination(ExportContext context, Fileformat ff, Prefs prefs) throws UGHException, IOException, SwapException {
+        Process process = context.getProcess();
 
         // if media folder is used, remove all pages from master folder
 
         String mediaFolder = process.getImagesTifDirectory(false);
-        List<Path> imagesInMediaFolder = StorageProvider.getInstance().listFiles(mediaFolder);
-        if (config.getBoolean("cleanupPagination", false)) {
+        List<Path> imagesInMediaFolder = context.getSnapshot().listFiles(Paths.get(mediaFolder));
+        if (context.getConfiguration().isCleanupPagination()) {
             DigitalDocument dd = ff.getDigitalDocument();
             DocStruct pyhsical = dd.getPhysicalDocStruct();
             DocStruct logical = dd.getLogicalDocStruct();
@@ -190,10 +470,10 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                 for (ContentFile cf : contentFilesToDelete) {
                     dd.getFileSet().removeFile(cf);
                 }
-                Prefs prefs = process.getRegelsatz().getPreferences();
                 int currentPhysicalOrder = 0;
-                MetadataType physPageNumber = prefs.getMetadataTypeByName("physPageNumber");
-                MetadataType logicalPageNumber = prefs.getMetadataTypeByName("logicalPageNumber");
+                MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
+                MetadataType physPageNumber = types.getMetadataType("physPageNumber");
+                MetadataType logicalPageNumber = types.getMetadataType("logicalPageNumber");
 
                 for (Path image : imagesInMediaFolder) {
                     DocStruct dsPage = dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
@@ -243,9 +523,10 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         });
     }
 
-    private void addAdditionalMetadata(List<MetadataConfiguration> additionalMetadata, DigitalDocument dd, Prefs prefs, VariableReplacer vp) {
-        for (MetadataConfiguration config : additionalMetadata) {
-            MetadataType type = prefs.getMetadataTypeByName(config.getMetadataType());
+    private void addAdditionalMetadata(ExportContext context, DigitalDocument dd, Prefs prefs, VariableReplacer vp) {
+        MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
+        for (MetadataConfiguration config : context.getConfiguration().getMetadataConfigurations()) {
+            MetadataType type = types.getMetadataType(config.getMetadataType());
             if (type != null) {
                 List<? extends Metadata> existingMetadata = dd.getLogicalDocStruct().getAllMetadataByType(type);
                 if (config.isForceCreation() || existingMetadata == null || existingMetadata.isEmpty()) {
@@ -257,83 +538,89 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                         }
                     } catch (MetadataTypeNotAllowedException e) {
                         log.error(e);
-                        problems.add("Error adding metadata of type " + config.getMetadataType());
+                        context.getProblems().add("Error adding metadata of type " + config.getMetadataType());
                     }
                 }
             }
         }
     }
 
-    private List<VocabularyRecordConfig> readVocabularyRecordConfigs(XMLConfiguration configuration) {
-        List<HierarchicalConfiguration> configs = configuration.configurationsAt("vocabulary");
-        if (configs != null) {
-            return configs.stream().map(config -> {
-                String groupType = config.getString("metadataGroupType", null);
-                Integer vocabularyId = config.getInteger("vocabularyId", null);
-                String identifierMetadata = config.getString("recordIdentifierMetadata", null);
-                if (StringUtils.isNotBlank(groupType) && StringUtils.isNotBlank(identifierMetadata) && vocabularyId != null) {
-                    List<HierarchicalConfiguration> enrichConfigs = config.configurationsAt("enrich");
-                    List<VocabularyEnrichment> enrichments = Optional.ofNullable(enrichConfigs).map(ecs -> {
-                        return ecs.stream().map(ec -> {
-                            String md = ec.getString("metadataType", "");
-                            String field = ec.getString("vocabularyField", "");
-                            return new VocabularyEnrichment(field, md);
-                        }).collect(Collectors.toList());
-                    }).orElse(Collections.emptyList());
-                    return new VocabularyRecordConfig(groupType, vocabularyId, identifierMetadata, enrichments);
-                } else {
-                    return null;
-                }
-            })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-        } else {
-            return Collections.emptyList();
-        }
-    }
-
-    private List<MetadataConfiguration> readMetadataConfigurations(XMLConfiguration configuration) {
-        List<HierarchicalConfiguration> metadataConfigs = configuration.configurationsAt("metadata");
-        if (metadataConfigs != null) {
-            return metadataConfigs.stream().map(config -> {
-                String type = config.getString("[@type]");
-                boolean force = config.getBoolean("[@force]", false);
-                GenerationRule rule = new GenerationRule(config.getString("rule"), config.getString("rule[@numberFormat]"));
-                if (StringUtils.isNotBlank(type) && StringUtils.isNotBlank(rule.getValue())) {
-                    return new MetadataConfiguration(type, force, rule);
-                } else {
-                    return null;
-                }
-            })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-        } else {
-            return Collections.emptyList();
-        }
-    }
-
-    private void enrichFromVocabulary(Prefs prefs, DigitalDocument dd, List<VocabularyRecordConfig> vocabConfigs, String baseUrl)
-            throws MetadataTypeNotAllowedException {
+    private void enrichFromVocabulary(ExportContext context, Prefs prefs, DigitalDocument dd) throws MetadataTypeNotAllowedException {
+        List<VocabularyRecordConfig> vocabConfigs = context.getConfiguration().getVocabularyConfigs();
+        String baseUrl = context.getConfiguration().getVocabularyBaseUrl();
         DocStruct logical = dd.getLogicalDocStruct();
+        prefetchVocabularyRecords(logical, vocabConfigs, context.getSession());
+
         for (Metadata metadata : new ArrayList<>(logical.getAllMetadata())) {
-            vocabularyEnrichment(prefs, metadata, baseUrl);
+            vocabularyEnrichment(context, prefs, metadata, baseUrl);
         }
 
         for (MetadataGroup group : logical.getAllMetadataGroups()) {
-            vocabularyEnrichment(group, vocabConfigs);
+            vocabularyEnrichment(context, group, vocabConfigs);
             for (Metadata metadata : new ArrayList<>(group.getMetadataList())) {
-                vocabularyEnrichment(prefs, metadata, baseUrl);
+                vocabularyEnrichment(context, prefs, metadata, baseUrl);
             }
             for (MetadataGroup subgroup : group.getAllMetadataGroups()) {
-                vocabularyEnrichment(subgroup, vocabConfigs);
+                vocabularyEnrichment(context, subgroup, vocabConfigs);
                 for (Metadata metadata : new ArrayList<>(subgroup.getMetadataList())) {
-                    vocabularyEnrichment(prefs, metadata, baseUrl);
+                    vocabularyEnrichment(context, prefs, metadata, baseUrl);
                 }
             }
 
         }
     }
 
+    /**
+     * Collect all vocabulary records referenced by the document and load them with as few requests as possible, before the enrichment requests
+     * them one by one.
+     */
+    private void prefetchVocabularyRecords(DocStruct logical, List<VocabularyRecordConfig> vocabConfigs, ExportSession session) {
+        Map<Integer, Set<Integer>> recordIds = new HashMap<>();
+        Set<Integer> vocabulariesWithTitles = new HashSet<>();
+
+        List<Metadata> metadataList = new ArrayList<>();
+        if (logical.getAllMetadata() != null) {
+            metadataList.addAll(logical.getAllMetadata());
+        }
+        List<MetadataGroup> groups = new ArrayList<>();
+        if (logical.getAllMetadataGroups() != null) {
+            for (MetadataGroup group : logical.getAllMetadataGroups()) {
+                groups.add(group);
+                groups.addAll(group.getAllMetadataGroups());
+            }
+        }
+        for (MetadataGroup group : groups) {
+            metadataList.addAll(group.getMetadataList());
+            for (VocabularyRecordConfig config : vocabConfigs) {
+                if (Objects.equals(config.getGroupType(), group.getType().getName())) {
+                    List<Metadata> vocabIds = group.getMetadataByType(config.getRecordIdentifierMetadata());
+                    if (vocabIds != null) {
+                        for (Metadata vocabIdMetadata : vocabIds) {
+                            if (StringUtils.isNumeric(vocabIdMetadata.getValue())) {
+                                recordIds.computeIfAbsent(config.getVocabularyId(), k -> new HashSet<>())
+                                        .add(Integer.parseInt(vocabIdMetadata.getValue()));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (Metadata metadata : metadataList) {
+            VocabularyReference reference = VocabularyReference.parse(metadata);
+            if (reference != null && reference.getRecordId() != null) {
+                recordIds.computeIfAbsent(reference.getVocabularyId(), k -> new HashSet<>()).add(reference.getRecordId());
+            } else if (reference != null) {
+                vocabulariesWithTitles.add(reference.getVocabularyId());
+            }
+        }
+        try {
+            session.prefetch(recordIds, vocabulariesWithTitles);
+        } catch (RuntimeException e) {
+            // records that could not be prefetched are loaded during the enrichment
+            log.error("Error prefetching vocabulary records", e);
+        }
+    }
+
     private void addProjectData(MetsModsImportExport mm, Process process, VariableReplacer vp) {
         mm.setRightsOwner(vp.replace(process.getProjekt().getMetsRightsOwner()));
         mm.setRightsOwnerLogo(vp.replace(process.getProjekt().getMetsRightsOwnerLogo()));
@@ -368,19 +655,26 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
 
     protected DigitalDocument enrichFileformat(Fileformat ff, Prefs prefs, XMLConfiguration config, String imageFolder)
             throws PreferencesException, MetadataTypeNotAllowedException, NotExportableException, ExportException {
-        MetadataType published = prefs.getMetadataTypeByName("Published");
+        ExportContext context = new ExportContext(null, new ExportSession(new ExportConfiguration(config)), exportImages, exportFulltext);
+        return enrichFileformat(context, ff, prefs, imageFolder);
+    }
+
+    protected DigitalDocument enrichFileformat(ExportContext context, Fileformat ff, Prefs prefs, String imageFolder)
+            throws PreferencesException, MetadataTypeNotAllowedException, NotExportableException, ExportException {
+        ExportConfiguration config = context.getConfiguration();
+        MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
+        MetadataType published = types.getMetadataType("Published");
         DigitalDocument dd = ff.getDigitalDocument();
 
         // check if record should be exported
         DocStruct logical = dd.getLogicalDocStruct();
-        boolean exportAll = config.getBoolean("exportUnpublishedRecords", false);
+        boolean exportAll = config.isExportUnpublishedRecords();
         if (!exportAll) {
-            List<? extends Metadata> md = logical.getAllMetadataByType(published);
-            if (md.isEmpty()) {
-                throw new NotExportableException("Record is not marked as exportable, skip export");
-
+            List<String> values = new ArrayList<>();
+            for (Metadata md : logical.getAllMetadataByType(published)) {
+                values.add(md.getValue());
             }
-            if (md.stream().noneMatch(m -> m.getValue() != null && m.getValue().matches("[YyJj]"))) {
+            if (!ExportabilityIndex.isPublished(values)) {
                 throw new NotExportableException("Record is not marked as exportable, skip export");
             }
         }
@@ -417,11 +711,11 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
             setRepresentative(prefs, ff);
         }
 
-        boolean addEventLocationFromAgent = config.getBoolean("addEventLocationFromAgent", false);
-        if (addEventLocationFromAgent && logical.getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName("LocationGroup")).isEmpty()) {
+        boolean addEventLocationFromAgent = config.isAddEventLocationFromAgent();
+        if (addEventLocationFromAgent && logical.getAllMetadataGroupsByType(types.getMetadataGroupType("LocationGroup")).isEmpty()) {
             try {
-                addLocationFromRelatedAgent(logical, prefs);
-            } catch (PreferencesException | ReadException | MetadataTypeNotAllowedException | DocStructHasNoTypeException e) {
+                addLocationFromRelatedAgent(context, logical, prefs);
+            } catch (MetadataTypeNotAllowedException | DocStructHasNoTypeException | IOException e) {
                 log.error("Unable to add location metadata group to event from agent: {}", e.toString());
             }
         }
@@ -429,67 +723,86 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         if (StringUtils.isNotBlank(imageFolder)) {
             DocStruct physical = dd.getPhysicalDocStruct();
             if (physical != null && physical.getAllChildren() != null) {
-                List<String> imageNamesInFolder = StorageProvider.getInstance().list(imageFolder);
-                List<String> imageNamesInFile = new ArrayList<>();
-                List<DocStruct> pages = physical.getAllChildren();
-                List<DocStruct> pagesToDelete = new ArrayList<>();
-                for (DocStruct page : pages) {
-                    String currentImage = Paths.get(page.getImageName()).getFileName().toString();
-                    if (imageNamesInFile.contains(currentImage)) {
-                        // duplicate entry, remove page
-                        pagesToDelete.add(page);
-                    } else {
-                        imageNamesInFile.add(currentImage);
-                    }
-                    if (!imageNamesInFolder.contains(currentImage)) {
-                        // image does not longer exist, remove page
-                        pagesToDelete.add(page);
-                    }
-                }
-
-                for (DocStruct page : pagesToDelete) {
+                reconcilePages(physical, new HashSet<>(context.getSnapshot().list(Paths.get(imageFolder))));
+            }
+        }
+        return dd;
+    }
 
-                    List<Reference> refs = new ArrayList<>(page.getAllFromReferences());
-                    for (ugh.dl.Reference ref : refs) {
-                        ref.getSource().removeReferenceTo(page);
-                    }
+    /**
+     * Remove all pages whose image does not exist in the image folder or that reference the same image as a previous page, then number the
+     * remaining pages again
+     *
+     * @param physical the physical structure element
+     * @param imageNamesInFolder names of the files in the image folder
+     */
+    static void reconcilePages(DocStruct physical, Set<String> imageNamesInFolder) {
+        Set<String> imageNamesInFile = new HashSet<>();
+        List<DocStruct> pages = physical.getAllChildren();
+        // pages are compared by identity, DocStruct does not implement hashCode
+        Set<DocStruct> pagesToDelete = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DocStruct page : pages) {
+            String currentImage = Paths.get(page.getImageName()).getFileName().toString();
+            if (!imageNamesInFile.add(currentImage)) {
+                // duplicate entry, remove page
+                pagesToDelete.add(page);
+            }
+            if (!imageNamesInFolder.contains(currentImage)) {
+                // image does not longer exist, remove page
+                pagesToDelete.add(page);
+            }
+        }
 
-                    physical.removeChild(page);
-                }
-                // finally generate new phys order
-
-                int order = 1;
-                for (DocStruct page : physical.getAllChildren()) {
-                    for (Metadata md : page.getAllMetadata()) {
-                        if ("physPageNumber".equals(md.getType().getName())) {
-                            md.setValue(String.valueOf(order));
-                            order++;
-                            break;
-                        }
-                    }
+        if (!pagesToDelete.isEmpty()) {
+            removePages(physical, pagesToDelete);
+        }
+        // finally generate new phys order
+
+        int order = 1;
+        for (DocStruct page : physical.getAllChildren()) {
+            for (Metadata md : page.getAllMetadata()) {
+                if ("physPageNumber".equals(md.getType().getName())) {
+                    md.setValue(String.valueOf(order));
+                    order++;
+                    break;
                 }
             }
         }
-        return dd;
     }
 
-    private void addLocationFromRelatedAgent(DocStruct logical, Prefs prefs)
-            throws PreferencesException, ReadException, MetadataTypeNotAllowedException, DocStructHasNoTypeException {
-        List<MetadataGroup> relationships = logical.getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName("Relationship"));
+    private static void removePages(DocStruct physical, Set<DocStruct> pagesToDelete) {
+        // collect all structure elements linked to the pages, each reference list is filtered only once
+        Set<DocStruct> linkedElements = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DocStruct page : pagesToDelete) {
+            for (Reference ref : page.getAllFromReferences()) {
+                linkedElements.add(ref.getSource());
+            }
+        }
+        for (DocStruct element : linkedElements) {
+            element.getAllToReferences().removeIf(ref -> pagesToDelete.contains(ref.getTarget()));
+        }
+
+        for (DocStruct page : pagesToDelete) {
+            physical.removeChild(page);
+        }
+    }
+
+    private void addLocationFromRelatedAgent(ExportContext context, DocStruct logical, Prefs prefs)
+            throws MetadataTypeNotAllowedException, DocStructHasNoTypeException, IOException {
+        MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
+        List<MetadataGroup> relationships = logical.getAllMetadataGroupsByType(types.getMetadataGroupType("Relationship"));
         for (MetadataGroup rel : relationships) {
             String entityType = rel.getMetadataByType("RelationEntityType").stream().findFirst().map(md -> md.getValue()).orElse(null);
             String relationshipType = rel.getMetadataByType("Type").stream().findFirst().map(md -> md.getValue()).orElse(null);
             if ("Agent".equals(entityType) && ("was organized by".equals(relationshipType) || "organized".equals(relationshipType))) {
                 String agentIdentifier = rel.getMetadataByType("RelationProcessID").stream().findFirst().map(md -> md.getValue()).orElse(null);
                 Path agentMetsPath = Paths.get(ConfigurationHelper.getInstance().getMetadataFolder(), agentIdentifier, "meta.xml");
-                Fileformat agentFormat = new MetsMods(prefs);
-                agentFormat.read(agentMetsPath.toAbsolutePath().toString());
-                MetadataGroup locationGroup = agentFormat.getDigitalDocument()
-                        .getLogicalDocStruct()
-                        .getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName("LocationGroup"))
-                        .stream()
-                        .findFirst()
-                        .orElse(null);
+                context.getDependencies().addAgent(agentIdentifier);
+                // the same agent organizes many events, its location is read only once
+                // the file is only scanned up to the location group, the agent document is not created
+                MetadataGroupData location = AgentLocationCache.getInstance()
+                        .getLocation(agentIdentifier, agentMetsPath, path -> MetadataGroupReader.readFirstGroup(path, "LocationGroup"));
+                MetadataGroup locationGroup = location == null ? null : location.materialize(types);
                 if (locationGroup != null) {
                     logical.addMetadataGroup(locationGroup);
                 }
@@ -498,8 +811,9 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
     }
 
     private void setRepresentative(Prefs prefs, Fileformat ff) throws PreferencesException {
-        List<MetadataGroup> mediaGroups =
-                ff.getDigitalDocument().getLogicalDocStruct().getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName("Media"));
+        List<MetadataGroup> mediaGroups = ff.getDigitalDocument()
+                .getLogicalDocStruct()
+                .getAllMetadataGroupsByType(MetadataTypeRegistry.forPrefs(prefs).getMetadataGroupType("Media"));
         Optional<MetadataGroup> firstPortrait = mediaGroups.stream()
                 .filter(gr -> gr.getMetadataByType("Subject").stream().anyMatch(md -> REPRESENTATIVE_IMAGE_SUBJECTS.contains(md.getValue())))
                 .findFirst();
@@ -522,14 +836,9 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         });
     }
 
-    private XMLConfiguration getConfig() {
-        XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(title);
-        xmlConfig.setReloadingStrategy(new FileChangedReloadingStrategy());
-        return xmlConfig;
-    }
-
-    private void writeFileGroups(Process process, DigitalDocument dd, VariableReplacer vp, MetsModsImportExport mm, XMLConfiguration config)
+    private void writeFileGroups(ExportContext context, DigitalDocument dd, VariableReplacer vp, MetsModsImportExport mm)
             throws IOException, SwapException {
+        Process process = context.getProcess();
 
         List<ProjectFileGroup> myFilegroups = process.getProjekt().getFilegroups();
         boolean useOriginalFiles = false;
@@ -543,8 +852,7 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                     String foldername = process.getMethodFromName(pfg.getFolder());
                     if (foldername != null) {
                         Path folder = Paths.get(process.getMethodFromName(pfg.getFolder()));
-                        if (folder != null && StorageProvider.getInstance().isFileExists(folder)
-                                && !StorageProvider.getInstance().list(folder.toString()).isEmpty()) {
+                        if (folder != null && !context.getSnapshot().isEmpty(folder)) {
                             VirtualFileGroup v = createFilegroup(vp, pfg);
                             mm.getDigitalDocument().getFileSet().addVirtualFileGroup(v);
                         }
@@ -558,56 +866,75 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
 
         if (useOriginalFiles) {
             // check if media folder contains images
-            List<Path> filesInFolder = StorageProvider.getInstance().listFiles(process.getImagesTifDirectory(false));
-            filesInFolder.sort((file1, file2) -> {
-                String name1 = file1.getFileName().toString();
-                String name2 = file2.getFileName().toString();
-                String base1 = FilenameUtils.getBaseName(name1);
-                String base2 = FilenameUtils.getBaseName(name2);
-                String extension1 = FilenameUtils.getExtension(name1);
-                String extension2 = FilenameUtils.getExtension(name2);
-                if (StringUtils.equalsIgnoreCase(base1, base2)) {
-                    if (StringUtils.isBlank(extension1)) {
-                        return 1;
-                    } else if (StringUtils.isBlank(extension2)) {
-                        return -1;
-                    }
-                    return 0;
-                } else {
-                    return name1.compareTo(name2);
-                }
-            });
+            List<Path> filesInFolder = context.getSnapshot().listFiles(Paths.get(process.getImagesTifDirectory(false)));
             if (!filesInFolder.isEmpty()) {
+                Map<String, Path> filesByBaseName = createBaseNameIndex(filesInFolder);
                 // compare image names with files in mets file
                 List<DocStruct> pages = dd.getPhysicalDocStruct().getAllChildren();
                 if (pages != null && !pages.isEmpty()) {
                     for (DocStruct page : pages) {
                         Path completeNameInMets = Paths.get(page.getImageName());
-                        String filenameInMets = completeNameInMets.getFileName().toString();
-                        int dotIndex = filenameInMets.lastIndexOf('.');
-                        if (dotIndex != -1) {
-                            filenameInMets = filenameInMets.substring(0, dotIndex);
-                        }
-                        for (Path imageNameInFolder : filesInFolder) {
-                            String imageName = imageNameInFolder.getFileName().toString();
-                            dotIndex = imageName.lastIndexOf('.');
-                            if (dotIndex != -1) {
-                                imageName = imageName.substring(0, dotIndex);
-                            }
-
-                            if (filenameInMets.equalsIgnoreCase(imageName)) {
-                                // found matching filename
-                                page.setImageName(imageNameInFolder.toString());
-                                break;
-                            }
+                        String filenameInMets = getBaseName(completeNameInMets.getFileName().toString());
+                        Path imageNameInFolder = filesByBaseName.get(filenameInMets.toLowerCase(Locale.ROOT));
+                        if (imageNameInFolder != null) {
+                            // found matching filename, replace filename in mets file
+                            page.setImageName(imageNameInFolder.toString());
                         }
                     }
-                    // replace filename in mets file
                 }
             }
         }
     }
 
+    /**
+     * Create an index of files by their lower case base name. If multiple files share the same base name, a file with extension is preferred over a
+     * file without extension, otherwise the first file in alphabetical order is used.
+     *
+     * @param files the files to index
+     * @return map with lower case base name as key
+     */
+    private Map<String, Path> createBaseNameIndex(List<Path> files) {
+        List<MediaFile> mediaFiles = new ArrayList<>(files.size());
+        for (Path file : files) {
+            mediaFiles.add(new MediaFile(file));
+        }
+        mediaFiles.sort((file1, file2) -> file1.name.compareTo(file2.name));
+
+        Map<String, MediaFile> index = new HashMap<>();
+        for (MediaFile file : mediaFiles) {
+            MediaFile existing = index.get(file.key);
+            if (existing == null || (!existing.hasExtension && file.hasExtension)) {
+                index.put(file.key, file);
+            }
+        }
+        Map<String, Path> filesByBaseName = new HashMap<>();
+        index.forEach((key, file) -> filesByBaseName.put(key, file.path));
+        return filesByBaseName;
+    }
+
+    /**
+     * File in the media folder with precomputed name parts
+     */
+    private static class MediaFile {
+        private final Path path;
+        private final String name;
+        private final String key;
+        private final boolean hasExtension;
+
+        private MediaFile(Path path) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            String baseName = getBaseName(name);
+            this.key = baseName.toLowerCase(Locale.ROOT);
+            this.hasExtension = baseName.length() < name.length();
+        }
+    }
+
+    private static String getBaseName(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex == -1 ? filename : filename.substring(0, dotIndex);
+    }
+
     private VirtualFileGroup createFilegroup(VariableReplacer variableRplacer, ProjectFileGroup projectFileGroup) {
         VirtualFileGroup v = new VirtualFileGroup();
         v.setName(projectFileGroup.getName());
@@ -628,7 +955,11 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         return v;
     }
 
-    private boolean exportFiles(Process myProzess, VariableReplacer replacer, String inZielVerzeichnis) {
+    private boolean exportFiles(ExportContext context, VariableReplacer replacer, String inZielVerzeichnis) {
+        Process myProzess = context.getProcess();
+        ExportConfiguration config = context.getConfiguration();
+        List<String> problems = context.getProblems();
+        ExportStageTimer timer = context.getTimer();
         String errorMessageTitle = EXPORT_ERROR_PREFIX + "Process: " + myProzess.getTitel();
         String atsPpnBand = myProzess.getTitel();
 
@@ -644,8 +975,8 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                 benutzerHome = Paths.get(benutzerHome.toString(), myProzess.getTitel());
                 zielVerzeichnis = benutzerHome.toString();
 
-                /* alte Import-Ordner löschen */
-                if (!StorageProvider.getInstance().deleteDir(benutzerHome)) {
+                /* alte Import-Ordner löschen, bei inkrementellem Export nur geänderte Dateien ersetzen, bei Staging erst nach dem Export */
+                if (!config.isIncrementalExport() && !config.isStagingExport() && !StorageProvider.getInstance().deleteDir(benutzerHome)) {
                     String errorDetails = "Import folder could not be cleared.";
                     Helper.setFehlerMeldung(errorMessageTitle, errorDetails);
                     problems.add(EXPORT_ERROR_PREFIX + errorDetails);
@@ -672,7 +1003,7 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                     return false;
                 }
 
-                if (!StorageProvider.getInstance().isFileExists(benutzerHome)) {
+                if (!config.isStagingExport() && !StorageProvider.getInstance().isFileExists(benutzerHome)) {
                     try {
                         StorageProvider.getInstance().createDirectories(benutzerHome);
                     } catch (IOException e) {
@@ -687,64 +1018,136 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
             zielVerzeichnis = replacer.replace(zielVerzeichnis) + FileSystems.getDefault().getSeparator();
             // wenn das Home existiert, erst löschen und dann neu anlegen
             benutzerHome = Paths.get(zielVerzeichnis);
-            if (!StorageProvider.getInstance().deleteDir(benutzerHome)) {
+            if (!config.isIncrementalExport() && !config.isStagingExport() && !StorageProvider.getInstance().deleteDir(benutzerHome)) {
                 String errorDetails = "Could not delete home directory.";
                 Helper.setFehlerMeldung(errorMessageTitle, errorDetails);
                 problems.add(EXPORT_ERROR_PREFIX + errorDetails);
                 return false;
             }
-            prepareUserDirectory(zielVerzeichnis);
+            if (!config.isStagingExport()) {
+                prepareUserDirectory(zielVerzeichnis);
+            }
+        }
+
+        // write into a temporary folder, that replaces the process folder after all files are exported
+        StagingDirectory staging = null;
+        boolean committed = false;
+        if (config.isStagingExport() && (!myProzess.getProjekt().isUseDmsImport() || myProzess.getProjekt().isDmsImportCreateProcessFolder())) {
+            try {
+                staging = StagingDirectory.create(benutzerHome);
+            } catch (IOException e) {
+                log.error("Error creating staging directory for {}", benutzerHome, e);
+                String errorDetails = "Could not create staging directory.";
+                Helper.setFehlerMeldung(errorMessageTitle, errorDetails);
+                problems.add(EXPORT_ERROR_PREFIX + errorDetails);
+                return false;
+            }
+            benutzerHome = staging.getPath();
+            if (!myProzess.getProjekt().isUseDmsImport()) {
+                prepareUserDirectory(benutzerHome.toString());
+            }
+        }
+
+        ExportManifest manifest = null;
+        if (config.isIncrementalExport()) {
+            manifest = ExportManifest.load(benutzerHome, "." + atsPpnBand + MANIFEST_SUFFIX, config.isIncrementalExportUseDigest());
         }
+        context.setManifest(manifest);
 
+        CopyScheduler copyScheduler = null;
+        if (config.getCopyThreads() > 1) {
+            copyScheduler = new CopyScheduler(config.getCopyThreads());
+        }
+        context.setCopyScheduler(copyScheduler);
         try {
-            if (this.exportImages) {
-                imageDownload(myProzess, benutzerHome, atsPpnBand, DIRECTORY_SUFFIX);
+            if (context.isExportImages()) {
+                try (ExportStageTimer.Measurement m = timer.start(STAGE_IMAGES, STAGE_FILES)) {
+                    imageDownload(context, benutzerHome, atsPpnBand, DIRECTORY_SUFFIX);
+                }
             }
-            if (this.exportFulltext) {
-                fulltextDownload(myProzess, benutzerHome, atsPpnBand, DIRECTORY_SUFFIX);
+            if (context.isExportFulltext()) {
+                try (ExportStageTimer.Measurement m = timer.start(STAGE_FULLTEXT, STAGE_FILES)) {
+                    fulltextDownload(context, benutzerHome, atsPpnBand, DIRECTORY_SUFFIX);
+                }
             }
 
             String ed = myProzess.getExportDirectory();
             Path exportFolder = Paths.get(ed);
-            if (StorageProvider.getInstance().isFileExists(exportFolder) && StorageProvider.getInstance().isDirectory(exportFolder)) {
-                List<Path> filesInExportFolder = StorageProvider.getInstance().listFiles(ed);
-
-                for (Path exportFile : filesInExportFolder) {
-                    if (StorageProvider.getInstance().isDirectory(exportFile)
-                            && !StorageProvider.getInstance().list(exportFile.toString()).isEmpty()) {
-                        if (!exportFile.getFileName().toString().matches(".+\\.\\d+")) {
-                            String suffix = exportFile.getFileName().toString().substring(exportFile.getFileName().toString().lastIndexOf("_"));
-                            Path destination = Paths.get(benutzerHome.toString(), atsPpnBand + suffix);
+            try (ExportStageTimer.Measurement m = timer.start(STAGE_EXPORT_FOLDER, STAGE_FILES)) {
+                if (context.getSnapshot().isFolderExists(exportFolder)) {
+                    List<Path> filesInExportFolder = context.getSnapshot().listFiles(exportFolder);
+
+                    for (Path exportFile : filesInExportFolder) {
+                        if (context.getSnapshot().isDirectory(exportFile) && !context.getSnapshot().isEmpty(exportFile)) {
+                            if (!exportFile.getFileName().toString().matches(".+\\.\\d+")) {
+                                String suffix = exportFile.getFileName().toString().substring(exportFile.getFileName().toString().lastIndexOf("_"));
+                                Path destination = Paths.get(benutzerHome.toString(), atsPpnBand + suffix);
+                                if (!StorageProvider.getInstance().isFileExists(destination)) {
+                                    StorageProvider.getInstance().createDirectories(destination);
+                                }
+                                List<Path> files = context.getSnapshot().listFiles(exportFile);
+                                for (Path file : files) {
+                                    Path target = Paths.get(destination.toString(), file.getFileName().toString());
+                                    copyFile(context, file, target, STAGE_EXPORT_FOLDER);
+                                }
+                            }
+                        } else {
+                            // if it is a regular file, export it to source folder
+                            Path destination = Paths.get(benutzerHome.toString(), atsPpnBand + "_src");
                             if (!StorageProvider.getInstance().isFileExists(destination)) {
                                 StorageProvider.getInstance().createDirectories(destination);
                             }
-                            List<Path> files = StorageProvider.getInstance().listFiles(exportFile.toString());
-                            for (Path file : files) {
-                                Path target = Paths.get(destination.toString(), file.getFileName().toString());
-                                StorageProvider.getInstance().copyFile(file, target);
-                            }
+                            Path target = Paths.get(destination.toString(), exportFile.getFileName().toString());
+                            copyFile(context, exportFile, target, STAGE_EXPORT_FOLDER);
                         }
-                    } else {
-                        // if it is a regular file, export it to source folder
-                        Path destination = Paths.get(benutzerHome.toString(), atsPpnBand + "_src");
-                        if (!StorageProvider.getInstance().isFileExists(destination)) {
-                            StorageProvider.getInstance().createDirectories(destination);
-                        }
-                        Path target = Paths.get(destination.toString(), exportFile.getFileName().toString());
-                        StorageProvider.getInstance().copyFile(exportFile, target);
+
                     }
+                }
+            }
 
+            if (copyScheduler != null) {
+                // the copy stages only measured the scheduling, the time waiting for the copies belongs to the stages that submitted them
+                long start = System.nanoTime();
+                try {
+                    copyScheduler.await();
+                } finally {
+                    timer.distribute(System.nanoTime() - start, copyScheduler.getBusyNanos(), "awaitCopies", STAGE_FILES);
                 }
             }
+
+            if (manifest != null) {
+                int deletedFiles = manifest.deleteRemovedFiles();
+                log.debug("Incremental export of {}: deleted {} files that no longer exist", atsPpnBand, deletedFiles);
+                manifest.save();
+            }
+
+            if (staging != null) {
+                staging.commit();
+                committed = true;
+            }
         } catch (AccessDeniedException exception) {
             String errorDetails = "Access to " + exception.getMessage() + " was denied.";
             Helper.setFehlerMeldung(errorMessageTitle, errorDetails);
             problems.add(EXPORT_ERROR_PREFIX + errorDetails);
             return false;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            String errorDetails = "Export was interrupted.";
+            Helper.setFehlerMeldung(errorMessageTitle, errorDetails);
+            problems.add(EXPORT_ERROR_PREFIX + errorDetails);
+            return false;
         } catch (Exception exception) { //NOSONAR InterruptedException must not be re-thrown as it is not running in a separate thread
             Helper.setFehlerMeldung(errorMessageTitle, exception);
             problems.add(EXPORT_ERROR_PREFIX + exception.getMessage());
             return false;
+        } finally {
+            if (copyScheduler != null) {
+                copyScheduler.close();
+                context.setCopyScheduler(null);
+            }
+            if (staging != null && !committed) {
+                staging.discard();
+            }
         }
         return true;
     }
@@ -762,45 +1165,47 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         return target;
     }
 
-    public void fulltextDownload(Process myProzess, Path benutzerHome, String atsPpnBand, final String ordnerEndung)
+    public void fulltextDownload(ExportContext context, Path benutzerHome, String atsPpnBand, final String ordnerEndung)
             throws IOException, InterruptedException, SwapException, DAOException {
+        Process myProzess = context.getProcess();
 
         // download sources
         Path sources = Paths.get(myProzess.getSourceDirectory());
-        if (StorageProvider.getInstance().isFileExists(sources) && !StorageProvider.getInstance().list(sources.toString()).isEmpty()) {
+        if (!context.getSnapshot().isEmpty(sources)) {
             Path destination = Paths.get(benutzerHome.toString(), atsPpnBand + "_src");
             if (!StorageProvider.getInstance().isFileExists(destination)) {
                 StorageProvider.getInstance().createDirectories(destination);
             }
-            List<Path> dateien = StorageProvider.getInstance().listFiles(myProzess.getSourceDirectory());
+            List<Path> dateien = context.getSnapshot().listFiles(sources);
             for (Path dir : dateien) {
                 Path meinZiel = Paths.get(destination.toString(), dir.getFileName().toString());
-                StorageProvider.getInstance().copyFile(dir, meinZiel);
+                copyFile(context, dir, meinZiel, STAGE_FULLTEXT);
             }
         }
 
         Path ocr = Paths.get(myProzess.getOcrDirectory());
-        if (StorageProvider.getInstance().isFileExists(ocr)) {
-            List<Path> folder = StorageProvider.getInstance().listFiles(myProzess.getOcrDirectory());
+        if (context.getSnapshot().isFolderExists(ocr)) {
+            List<Path> folder = context.getSnapshot().listFiles(ocr);
             for (Path dir : folder) {
-                if (StorageProvider.getInstance().isDirectory(dir) && !StorageProvider.getInstance().list(dir.toString()).isEmpty()) {
+                if (context.getSnapshot().isDirectory(dir) && !context.getSnapshot().isEmpty(dir)) {
                     String suffix = dir.getFileName().toString().substring(dir.getFileName().toString().lastIndexOf("_"));
                     Path destination = Paths.get(benutzerHome.toString(), atsPpnBand + suffix);
                     if (!StorageProvider.getInstance().isFileExists(destination)) {
                         StorageProvider.getInstance().createDirectories(destination);
                     }
-                    List<Path> files = StorageProvider.getInstance().listFiles(dir.toString());
+                    List<Path> files = context.getSnapshot().listFiles(dir);
                     for (Path file : files) {
                         Path target = Paths.get(destination.toString(), file.getFileName().toString());
-                        StorageProvider.getInstance().copyFile(file, target);
+                        copyFile(context, file, target, STAGE_FULLTEXT);
                     }
                 }
             }
         }
     }
 
-    public void imageDownload(Process myProzess, Path benutzerHome, String atsPpnBand, final String ordnerEndung)
+    public void imageDownload(ExportContext context, Path benutzerHome, String atsPpnBand, final String ordnerEndung)
             throws IOException, InterruptedException, SwapException, DAOException {
+        Process myProzess = context.getProcess();
 
         /*
          * -------------------------------- dann den Ausgangspfad ermitteln --------------------------------
@@ -811,7 +1216,7 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
          * -------------------------------- jetzt die Ausgangsordner in die Zielordner kopieren --------------------------------
          */
         Path zielTif = Paths.get(benutzerHome.toString(), atsPpnBand + ordnerEndung);
-        if (StorageProvider.getInstance().isFileExists(tifOrdner) && !StorageProvider.getInstance().list(tifOrdner.toString()).isEmpty()) {
+        if (!context.getSnapshot().isEmpty(tifOrdner)) {
 
             /* bei Agora-Import einfach den Ordner anlegen */
             if (myProzess.getProjekt().isUseDmsImport()) {
@@ -837,14 +1242,14 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
             }
 
             /* jetzt den eigentlichen Kopiervorgang */
-            List<Path> files = StorageProvider.getInstance().listFiles(myProzess.getImagesTifDirectory(false), NIOFileUtils.DATA_FILTER);
+            List<Path> files = context.getSnapshot().listFiles(tifOrdner, NIOFileUtils.DATA_FILTER);
             for (Path file : files) {
                 Path target = Paths.get(zielTif.toString(), file.getFileName().toString());
-                StorageProvider.getInstance().copyFile(file, target);
+                copyFile(context, file, target, STAGE_IMAGES);
 
                 //for 3d object files look for "helper files" with the same base name and copy them as well
                 if (NIOFileUtils.objectNameFilter.accept(file)) {
-                    copy3DObjectHelperFiles(myProzess, zielTif, file);
+                    copy3DObjectHelperFiles(context, zielTif, file);
                 }
             }
         }
@@ -857,12 +1262,11 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                     // check if source files exists
                     if (pfg.getFolder() != null && pfg.getFolder().length() > 0) {
                         Path folder = Paths.get(myProzess.getMethodFromName(pfg.getFolder()));
-                        if (folder != null && StorageProvider.getInstance().isFileExists(folder)
-                                && !StorageProvider.getInstance().list(folder.toString()).isEmpty()) {
-                            List<Path> files = StorageProvider.getInstance().listFiles(folder.toString());
+                        if (folder != null && !context.getSnapshot().isEmpty(folder)) {
+                            List<Path> files = context.getSnapshot().listFiles(folder);
                             for (Path file : files) {
                                 Path target = Paths.get(zielTif.toString(), file.getFileName().toString());
-                                StorageProvider.getInstance().copyFile(file, target);
+                                copyFile(context, file, target, STAGE_IMAGES);
                             }
                         }
                     }
@@ -871,27 +1275,66 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         }
     }
 
-    public void copy3DObjectHelperFiles(Process myProzess, Path zielTif, Path file)
+    public void copy3DObjectHelperFiles(ExportContext context, Path zielTif, Path file)
             throws IOException, InterruptedException, SwapException, DAOException {
-        Path tiffDirectory = Paths.get(myProzess.getImagesTifDirectory(true));
+        Path tiffDirectory = Paths.get(context.getProcess().getImagesTifDirectory(true));
         String baseName = FilenameUtils.getBaseName(file.getFileName().toString());
-        List<Path> helperFiles = StorageProvider.getInstance()
-                .listDirNames(tiffDirectory.toString())
+        List<Path> helperFiles = context.getSnapshot()
+                .listDirNames(tiffDirectory)
                 .stream()
                 .filter(dirName -> dirName.equals(baseName))
                 .map(tiffDirectory::resolve)
                 .collect(Collectors.toList());
         for (Path helperFile : helperFiles) {
             Path helperTarget = Paths.get(zielTif.toString(), helperFile.getFileName().toString());
-            if (StorageProvider.getInstance().isDirectory(helperFile)) {
-                StorageProvider.getInstance().copyDirectory(helperFile, helperTarget);
+            if (context.getSnapshot().isDirectory(helperFile)) {
+                copyDirectory(context, helperFile, helperTarget, STAGE_IMAGES);
+            } else {
+                copyFile(context, helperFile, helperTarget, STAGE_IMAGES);
+            }
+        }
+    }
+
+    /**
+     * Copy a folder file by file, so that incremental exports skip unchanged files and remove files that no longer exist
+     */
+    private void copyDirectory(ExportContext context, Path source, Path target, String stage) throws IOException, InterruptedException {
+        if (!StorageProvider.getInstance().isFileExists(target)) {
+            StorageProvider.getInstance().createDirectories(target);
+        }
+        for (Path file : context.getSnapshot().listFiles(source)) {
+            Path fileTarget = target.resolve(file.getFileName().toString());
+            if (context.getSnapshot().isDirectory(file)) {
+                copyDirectory(context, file, fileTarget, stage);
             } else {
-                StorageProvider.getInstance().copyFile(helperFile, helperTarget);
+                copyFile(context, file, fileTarget, stage);
             }
         }
     }
 
-    private void vocabularyEnrichment(MetadataGroup group, List<VocabularyRecordConfig> vocabConfigs) {
+    private void copyFile(ExportContext context, Path source, Path target, String stage) throws IOException, InterruptedException {
+        CopyScheduler copyScheduler = context.getCopyScheduler();
+        if (copyScheduler == null) {
+            copyFileNow(context, source, target, stage);
+        } else {
+            copyScheduler.submit(stage, () -> copyFileNow(context, source, target, stage));
+        }
+    }
+
+    private void copyFileNow(ExportContext context, Path source, Path target, String stage) throws IOException {
+        ExportManifest manifest = context.getManifest();
+        if (manifest != null && manifest.isUnchanged(source, target)) {
+            return;
+        }
+        context.getFileTransferEngine().copy(source, target);
+        context.getTimer().addFile(stage, StorageProvider.getInstance().getFileSize(target));
+        if (manifest != null) {
+            manifest.addFile(source, target);
+        }
+    }
+
+    private void vocabularyEnrichment(ExportContext context, MetadataGroup group, List<VocabularyRecordConfig> vocabConfigs) {
+        ExportSession session = context.getSession();
 
         for (VocabularyRecordConfig config : vocabConfigs) {
             if (Objects.equals(config.getGroupType(), group.getType().getName())) {
@@ -905,11 +1348,14 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                                 .map(Long::parseLong)
                                 .map(Long::intValue)
                                 .orElse(-1);
-                        VocabRecord vocabRecord = VocabularyManager.getRecord(config.getVocabularyId(), vocabularyRecordId);
+                        VocabRecordView vocabRecord = session.getRecord(config.getVocabularyId(), vocabularyRecordId);
+                        if (vocabRecord != null) {
+                            context.getDependencies().addRecord(config.getVocabularyId(), vocabularyRecordId);
+                        }
 
                         for (VocabularyEnrichment enrichment : config.getEnrichments()) {
                             String fieldValue = Optional.ofNullable(vocabRecord)
-                                    .map(r -> getFieldByLabel(r, enrichment.getVocabularyField()))
+                                    .map(r -> r.getFieldByLabel(enrichment.getVocabularyField()))
                                     .map(Field::getValue)
                                     .orElse(null);
                             if (StringUtils.isNotBlank(fieldValue) && !"null".equalsIgnoreCase(fieldValue)) {
@@ -928,67 +1374,38 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
         }
     }
 
-    private Field getFieldByLabel(VocabRecord r, String label) {
-        for (Field field : r.getFields()) {
-            if (field.getLabel().equals(label)) {
-                return field;
-            }
-        }
-        return null;
-    }
-
-    private void vocabularyEnrichment(Prefs prefs, Metadata metadata, String configuredBaseUrl) throws MetadataTypeNotAllowedException {
+    private void vocabularyEnrichment(ExportContext context, Prefs prefs, Metadata metadata, String configuredBaseUrl)
+            throws MetadataTypeNotAllowedException {
+        ExportSession session = context.getSession();
 
-        if (StringUtils.isNotBlank(metadata.getAuthorityValue()) && metadata.getAuthorityURI().contains("vocabulary")) {
+        VocabularyReference reference = VocabularyReference.parse(metadata);
+        if (reference != null) {
             String vocabularyName = metadata.getAuthorityID();
-            String vocabRecordUrl = metadata.getAuthorityValue();
             String baseUrl;
             if (StringUtils.isBlank(configuredBaseUrl)) {
                 baseUrl = metadata.getAuthorityURI();
             } else {
                 baseUrl = configuredBaseUrl;
             }
-            String vocabRecordID = vocabRecordUrl.substring(vocabRecordUrl.lastIndexOf("/") + 1);
-            vocabRecordUrl = vocabRecordUrl.substring(0, vocabRecordUrl.lastIndexOf("/"));
-            String vocabularyID = vocabRecordUrl.substring(vocabRecordUrl.lastIndexOf("/") + 1);
-
-            if (!StringUtils.isNumeric(vocabularyID)) {
-                return;
-            }
 
-            VocabRecord vr = null;
-            if (StringUtils.isNumeric(vocabRecordID)) {
-                try {
-                    int voc = Integer.parseInt(vocabularyID);
-                    int rec = Integer.parseInt(vocabRecordID);
-                    vr = VocabularyManager.getRecord(voc, rec);
-                } catch (Exception e) {
-                    log.info(e);
-                    return;
-                }
-            } else {
-                Vocabulary vocabulary = VocabularyManager.getVocabularyById(Integer.parseInt(vocabularyID));
-                VocabularyManager.getAllRecords(vocabulary);
-                for (VocabRecord r : vocabulary.getRecords()) {
-                    if (r.getTitle().equals(vocabRecordID)) {
-                        vr = r;
-                        break;
-                    }
+            VocabRecordView vr = null;
+            try {
+                if (reference.getRecordId() != null) {
+                    vr = session.getRecord(reference.getVocabularyId(), reference.getRecordId());
+                } else {
+                    vr = session.getRecordByTitle(reference.getVocabularyId(), reference.getRecordTitle());
                 }
+            } catch (Exception e) {
+                log.info(e);
+                return;
             }
-            metadata.setAuthorityValue(baseUrl + "/" + vr.getVocabularyId() + "/" + vr.getId());
             if (vr != null) {
+                context.getDependencies().addRecord(vr.getRecord().getVocabularyId(), vr.getRecord().getId());
+                metadata.setAuthorityValue(baseUrl + "/" + vr.getRecord().getVocabularyId() + "/" + vr.getRecord().getId());
                 switch (vocabularyName) {
                     case "Location":
-                        String value = null;
-                        String authority = null;
-                        for (Field f : vr.getFields()) {
-                            if ("Location".equals(f.getDefinition().getLabel())) {
-                                value = f.getValue();
-                            } else if ("Authority Value".equals(f.getDefinition().getLabel())) {
-                                authority = f.getValue();
-                            }
-                        }
+                        String value = vr.getValueByDefinitionLabel("Location");
+                        String authority = vr.getValueByDefinitionLabel("Authority Value");
                         metadata.setValue(value);
                         metadata.setAutorityFile("geonames", "http://www.geonames.org/", "http://www.geonames.org/" + authority);
                         break;
@@ -1005,56 +1422,30 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                     case "R10 Relationship Collective agent - Award":
                     case "R11 Relationship Work - Award":
                     case "R12 Relationship Event - Award":
-                        String eng = null;
-                        String fre = null;
-                        String ger = null;
                         // check if relation or reverse relation is used
-                        boolean useReverseRelationship = false;
-                        for (Field f : vr.getFields()) {
-                            if (f.getValue().equals(metadata.getValue())) {
-                                if (f.getDefinition().getLabel().startsWith("Reverse")) {
-                                    useReverseRelationship = true;
-                                } else {
-                                    useReverseRelationship = false;
-                                }
-                                break;
-                            }
-                        }
+                        Field usedField = vr.getFieldByValue(metadata.getValue());
+                        boolean useReverseRelationship = usedField != null && usedField.getDefinition().getLabel().startsWith("Reverse");
                         // get normed values
-                        for (Field f : vr.getFields()) {
-                            if ((f.getDefinition().getLabel().startsWith("Reverse") && useReverseRelationship)
-                                    || (f.getDefinition().getLabel().startsWith("Relationship") && !useReverseRelationship)) {
-                                if (StringUtils.isNotBlank(f.getDefinition().getLanguage())) {
-                                    switch (f.getDefinition().getLanguage()) {
-                                        case "ger":
-                                            ger = f.getValue();
-                                            break;
-                                        case "eng":
-                                            eng = f.getValue();
-                                            break;
-                                        case "fre":
-                                            fre = f.getValue();
-                                            break;
-                                        default:
-                                    }
-                                }
-                            }
-                        }
+                        Map<String, String> normedValues = vr.getValuesByLanguage(useReverseRelationship ? "Reverse" : "Relationship");
+                        String eng = normedValues.get("eng");
+                        String fre = normedValues.get("fre");
+                        String ger = normedValues.get("ger");
                         // write normed metadata
+                        MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
                         try {
-                            Metadata md = new Metadata(prefs.getMetadataTypeByName("_relationship_type_ger"));
+                            Metadata md = new Metadata(types.getMetadataType("_relationship_type_ger"));
                             md.setValue(ger);
                             metadata.getParent().addMetadata(md);
                         } catch (MetadataTypeNotAllowedException e) {
                         }
                         try {
-                            Metadata md = new Metadata(prefs.getMetadataTypeByName("_relationship_type_eng"));
+                            Metadata md = new Metadata(types.getMetadataType("_relationship_type_eng"));
                             md.setValue(eng);
                             metadata.getParent().addMetadata(md);
                         } catch (MetadataTypeNotAllowedException e) {
                         }
                         try {
-                            Metadata md = new Metadata(prefs.getMetadataTypeByName("_relationship_type_fre"));
+                            Metadata md = new Metadata(types.getMetadataType("_relationship_type_fre"));
                             md.setValue(fre);
                             metadata.getParent().addMetadata(md);
                         } catch (MetadataTypeNotAllowedException e) {
@@ -1062,40 +1453,8 @@ public class LuxArtistDictionaryExportPlugin implements IExportPlugin, IPlugin {
                         break;
 
                     default:
-                        for (Field f : vr.getFields()) {
-                            String recordLabel = vr.getFields()
-                                    .stream()
-                                    .filter(field -> "eng".equals(field.getLanguage()))
-                                    .map(field -> field.getLabel())
-                                    .findAny()
-                                    .orElse(null);
-                            if (StringUtils.isBlank(recordLabel)) {
-                                recordLabel = f.getLabel();
-                            }
-                            if (StringUtils.isNotBlank(f.getValue())) {
-                                String metadataName = null;
-                                Definition def = f.getDefinition();
-                                // find metadata name
-                                if (StringUtils.isNotBlank(def.getLanguage())) {
-                                    metadataName = "_" + recordLabel + "_" + def.getLanguage();
-                                } else {
-                                    metadataName = "_" + recordLabel;
-                                }
-                                metadataName = metadataName.replace(" ", "").toLowerCase();
-                                // create metadata
-                                MetadataType mdt = prefs.getMetadataTypeByName(metadataName);
-                                if (mdt != null) {
-                                    // set value
-                                    Metadata vocabMetadata = new Metadata(mdt);
-                                    vocabMetadata.setValue(f.getValue());
-                                    try {
-                                        metadata.getParent().addMetadata(vocabMetadata);
-                                    } catch (MetadataTypeNotAllowedException e) {
-
-                                    }
-                                }
-                            }
-                        }
+                        // the metadata names of the fields are resolved once for each vocabulary
+                        MetadataTypeRegistry.forPrefs(prefs).getProjectionPlan(vr).apply(vr, metadata);
                         break;
                 }
             }
@@ -0,0 +1,74 @@
+package de.intranda.goobi.plugins;
+
+import java.util.List;
+
+import lombok.Data;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.MetadataGroupType;
+import ugh.dl.MetadataType;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+
+/**
+ * Lightweight copy of a metadata group, containing only type names and values. It does not reference a ruleset or a document, so it can be
+ * cached and shared by all exports. Each export creates its own {@link MetadataGroup} from it with {@link #materialize(MetadataTypeRegistry)}.
+ * Persons within the group are not copied. Instances are created by the {@link MetadataGroupReader}.
+ */
+@Data
+public class MetadataGroupData {
+
+    private final String type;
+    private final List<Value> metadata;
+    private final List<MetadataGroupData> groups;
+
+    /**
+     * Create a new metadata group with the values of this copy. Metadata and groups that the ruleset does not define are skipped.
+     *
+     * @param types the metadata types of the ruleset
+     * @return the new group or null, if the ruleset does not define the group type
+     * @throws MetadataTypeNotAllowedException
+     */
+    public MetadataGroup materialize(MetadataTypeRegistry types) throws MetadataTypeNotAllowedException {
+        MetadataGroupType groupType = types.getMetadataGroupType(type);
+        if (groupType == null) {
+            return null;
+        }
+        MetadataGroup group = new MetadataGroup(groupType);
+        for (Value value : metadata) {
+            MetadataType metadataType = types.getMetadataType(value.getType());
+            if (metadataType == null) {
+                continue;
+            }
+            // a new group already contains empty metadata for its types, fill them first
+            Metadata md = group.getMetadataByType(value.getType())
+                    .stream()
+                    .filter(m -> m.getValue() == null || m.getValue().isEmpty())
+                    .findFirst()
+                    .orElse(null);
+            if (md == null) {
+                md = new Metadata(metadataType);
+                group.addMetadata(md);
+            }
+            md.setValue(value.getValue());
+            if (value.getAuthorityId() != null || value.getAuthorityValue() != null) {
+                md.setAutorityFile(value.getAuthorityId(), value.getAuthorityUri(), value.getAuthorityValue());
+            }
+        }
+        for (MetadataGroupData data : groups) {
+            MetadataGroup subgroup = data.materialize(types);
+            if (subgroup != null) {
+                group.addMetadataGroup(subgroup);
+            }
+        }
+        return group;
+    }
+
+    @Data
+    public static class Value {
+        private final String type;
+        private final String value;
+        private final String authorityId;
+        private final String authorityUri;
+        private final String authorityValue;
+    }
+}
@@ -0,0 +1,191 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * Streaming reader for single metadata groups and metadata values of a Goobi metadata file. Instead of creating the complete document with UGH,
+ * only the logical dmdSec is scanned until the requested data has been read. Only the data itself is kept in memory.
+ */
+public class MetadataGroupReader {
+
+    private static final String METS_NAMESPACE = "http://www.loc.gov/METS/";
+    private static final String GOOBI_NAMESPACE_PREFIX = "http://meta.goobi.org/";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private MetadataGroupReader() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Read the first metadata group of the given type from the dmdSec of the top logical element
+     *
+     * @param metsFile the metadata file
+     * @param groupType name of the group type, e.g. 'LocationGroup'
+     * @return the group or null, if the element has no such group
+     * @throws IOException if the file cannot be read or is not well-formed
+     */
+    public static MetadataGroupData readFirstGroup(Path metsFile, String groupType) throws IOException {
+        try (InputStream in = StorageProvider.getInstance().newInputStream(metsFile)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                return readFirstGroup(reader, groupType);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read " + metsFile, e);
+        }
+    }
+
+    /**
+     * Read the values of all metadata of the given type from the dmdSec of the top logical element. Metadata within groups are ignored.
+     *
+     * @param metsFile the metadata file
+     * @param metadataType name of the metadata type, e.g. 'Published'
+     * @return the values, empty if the element has no such metadata, or null if the file has no logical dmdSec, e.g. because it is no METS file
+     * @throws IOException if the file cannot be read or is not well-formed
+     */
+    public static List<String> readValues(Path metsFile, String metadataType) throws IOException {
+        try (InputStream in = StorageProvider.getInstance().newInputStream(metsFile)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                return readValues(reader, metadataType);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read " + metsFile, e);
+        }
+    }
+
+    private static List<String> readValues(XMLStreamReader reader, String metadataType) throws XMLStreamException {
+        List<String> values = new ArrayList<>();
+        boolean inLogicalSection = false;
+        int metadataDepth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (isMetsElement(reader, "dmdSec")) {
+                    String id = reader.getAttributeValue(null, "ID");
+                    inLogicalSection = id != null && id.startsWith("DMDLOG");
+                } else if (inLogicalSection && isGoobiMetadata(reader)) {
+                    String type = reader.getAttributeValue(null, "type");
+                    if (metadataDepth == 0 && type == null && metadataType.equals(reader.getAttributeValue(null, "name"))) {
+                        // reader is on the end element afterwards
+                        values.add(reader.getElementText());
+                    } else {
+                        metadataDepth++;
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inLogicalSection && isMetsElement(reader, "dmdSec")) {
+                    return values;
+                } else if (inLogicalSection && isGoobiMetadata(reader)) {
+                    metadataDepth--;
+                }
+            }
+        }
+        // no logical section found, the values are unknown
+        return null;
+    }
+
+    private static MetadataGroupData readFirstGroup(XMLStreamReader reader, String groupType) throws XMLStreamException {
+        boolean inLogicalSection = false;
+        // depth of goobi:metadata elements, only groups on the first level belong to the element itself
+        int metadataDepth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (isMetsElement(reader, "dmdSec")) {
+                    String id = reader.getAttributeValue(null, "ID");
+                    inLogicalSection = id != null && id.startsWith("DMDLOG");
+                } else if (inLogicalSection && isGoobiMetadata(reader)) {
+                    if (metadataDepth == 0 && "group".equals(reader.getAttributeValue(null, "type"))
+                            && groupType.equals(reader.getAttributeValue(null, "name"))) {
+                        return readGroup(reader);
+                    }
+                    metadataDepth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inLogicalSection && isMetsElement(reader, "dmdSec")) {
+                    // only the first logical section describes the element, stop here
+                    return null;
+                } else if (inLogicalSection && isGoobiMetadata(reader)) {
+                    metadataDepth--;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read a group, the reader is positioned on the start element of the group and ends on its end element
+     */
+    private static MetadataGroupData readGroup(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getAttributeValue(null, "name");
+        List<MetadataGroupData.Value> values = new ArrayList<>();
+        List<MetadataGroupData> groups = new ArrayList<>();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return new MetadataGroupData(name, Collections.unmodifiableList(values), Collections.unmodifiableList(groups));
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                String type = reader.getAttributeValue(null, "type");
+                if (!isGoobiMetadata(reader) || "person".equals(type) || "corporate".equals(type)) {
+                    skipElement(reader);
+                } else if ("group".equals(type)) {
+                    groups.add(readGroup(reader));
+                } else {
+                    String metadataName = reader.getAttributeValue(null, "name");
+                    String authority = reader.getAttributeValue(null, "authority");
+                    String authorityUri = reader.getAttributeValue(null, "authorityURI");
+                    String valueUri = reader.getAttributeValue(null, "valueURI");
+                    String value = reader.getElementText();
+                    values.add(new MetadataGroupData.Value(metadataName, value, authority, authorityUri, valueUri));
+                }
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document in group " + name);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isMetsElement(XMLStreamReader reader, String localName) {
+        return localName.equals(reader.getLocalName()) && METS_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    private static boolean isGoobiMetadata(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return "metadata".equals(reader.getLocalName()) && namespace != null && namespace.startsWith(GOOBI_NAMESPACE_PREFIX);
+    }
+}
@@ -0,0 +1,96 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ugh.dl.MetadataGroupType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Resolved metadata types and metadata group types of a ruleset. Each name is looked up only once in the ruleset, names that the ruleset does not
+ * define are remembered as well. The registry also keeps the {@link VocabularyProjectionPlan} of each vocabulary. The resolved types are shared
+ * by all registries of the same {@link Prefs} instance, so all stages, threads and sessions of the export use them.
+ */
+public class MetadataTypeRegistry {
+
+    // Prefs does not implement equals, so each loaded ruleset gets its own cache. The cache must not reference the ruleset, otherwise the weak key
+    // would never be cleared.
+    private static final Map<Prefs, TypeCache> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Prefs prefs;
+
+    private final TypeCache cache;
+
+    private MetadataTypeRegistry(Prefs prefs, TypeCache cache) {
+        this.prefs = prefs;
+        this.cache = cache;
+    }
+
+    /**
+     * Get the registry of a ruleset. The resolved types are kept until the ruleset is no longer used.
+     *
+     * @param prefs the ruleset
+     * @return the registry
+     */
+    public static MetadataTypeRegistry forPrefs(Prefs prefs) {
+        return new MetadataTypeRegistry(prefs, CACHES.computeIfAbsent(prefs, p -> new TypeCache()));
+    }
+
+    /**
+     * Get a metadata type by its name
+     *
+     * @param name name of the metadata type
+     * @return the metadata type or null, if the ruleset does not define it
+     */
+    public MetadataType getMetadataType(String name) {
+        if (name == null) {
+            return null;
+        }
+        return cache.metadataTypes.computeIfAbsent(name, n -> Optional.ofNullable(prefs.getMetadataTypeByName(n))).orElse(null);
+    }
+
+    /**
+     * Get a metadata group type by its name
+     *
+     * @param name name of the group type
+     * @return the group type or null, if the ruleset does not define it
+     */
+    public MetadataGroupType getMetadataGroupType(String name) {
+        if (name == null) {
+            return null;
+        }
+        return cache.groupTypes.computeIfAbsent(name, n -> Optional.ofNullable(prefs.getMetadataGroupTypeByName(n))).orElse(null);
+    }
+
+    /**
+     * Get the mapping of the fields of a vocabulary to the metadata types of this ruleset. The plan is created once for each vocabulary, and again
+     * when a record contains a field definition that was added to the vocabulary later.
+     *
+     * @param view a record of the vocabulary
+     * @return the plan
+     */
+    public VocabularyProjectionPlan getProjectionPlan(VocabRecordView view) {
+        Integer vocabularyId = view.getRecord().getVocabularyId();
+        VocabularyProjectionPlan plan = cache.projectionPlans.get(vocabularyId);
+        if (plan == null || !plan.isCreatedFor(view)) {
+            plan = VocabularyProjectionPlan.create(this, view);
+            cache.projectionPlans.put(vocabularyId, plan);
+        }
+        return plan;
+    }
+
+    // resolved types and plans of a ruleset, shared by all registries of the same Prefs instance
+    private static class TypeCache {
+
+        private final Map<String, Optional<MetadataType>> metadataTypes = new ConcurrentHashMap<>();
+
+        private final Map<String, Optional<MetadataGroupType>> groupTypes = new ConcurrentHashMap<>();
+
+        // projection plan for each vocabulary id
+        private final Map<Integer, VocabularyProjectionPlan> projectionPlans = new ConcurrentHashMap<>();
+    }
+}
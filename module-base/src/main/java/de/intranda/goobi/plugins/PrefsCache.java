@@ -0,0 +1,104 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.goobi.beans.Ruleset;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+
+/**
+ * Cache for parsed rulesets, shared by all exports. A ruleset is parsed again only when its file was modified. The cached {@link Prefs} are only
+ * read by the exports, so they can be used by concurrent exports.
+ */
+@Log4j2
+public class PrefsCache {
+
+    @Getter
+    private static final PrefsCache instance = new PrefsCache();
+
+    private final Map<Path, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    // one lock per ruleset file, so a ruleset is parsed only once even if many exports start at the same time
+    private final Map<Path, Object> locks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong parses = new AtomicLong();
+
+    PrefsCache() {
+    }
+
+    /**
+     * Get the parsed ruleset
+     *
+     * @param ruleset the ruleset
+     * @return the parsed ruleset
+     * @throws PreferencesException if the ruleset cannot be parsed
+     * @throws IOException if the ruleset file cannot be accessed
+     */
+    public Prefs getPreferences(Ruleset ruleset) throws PreferencesException, IOException {
+        return getPreferences(Paths.get(ConfigurationHelper.getInstance().getRulesetFolder(), ruleset.getDatei()));
+    }
+
+    /**
+     * Get the parsed ruleset
+     *
+     * @param rulesetFile the ruleset file
+     * @return the parsed ruleset
+     * @throws PreferencesException if the ruleset cannot be parsed
+     * @throws IOException if the ruleset file cannot be accessed
+     */
+    public Prefs getPreferences(Path rulesetFile) throws PreferencesException, IOException {
+        long lastModified = StorageProvider.getInstance().getLastModifiedDate(rulesetFile);
+        CacheEntry entry = entries.get(rulesetFile);
+        if (entry != null && entry.getLastModified() == lastModified) {
+            hits.incrementAndGet();
+            return entry.getPrefs();
+        }
+        synchronized (locks.computeIfAbsent(rulesetFile, f -> new Object())) {
+            // another export may have parsed the file in the meantime
+            entry = entries.get(rulesetFile);
+            if (entry != null && entry.getLastModified() == lastModified) {
+                hits.incrementAndGet();
+                return entry.getPrefs();
+            }
+            log.debug("Parse ruleset {}", rulesetFile);
+            Prefs prefs = new Prefs();
+            prefs.loadPrefs(rulesetFile.toString());
+            parses.incrementAndGet();
+            entries.put(rulesetFile, new CacheEntry(lastModified, prefs));
+            return prefs;
+        }
+    }
+
+    /**
+     * Remove all rulesets from the cache
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getParses() {
+        return parses.get();
+    }
+
+    @Data
+    private static class CacheEntry {
+        private final long lastModified;
+        private final Prefs prefs;
+    }
+}
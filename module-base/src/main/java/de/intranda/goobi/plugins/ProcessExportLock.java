@@ -0,0 +1,154 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+import lombok.Getter;
+
+/**
+ * Lock that allows only one export per process at a time, shared by all plugin instances. Requests that arrive while an export of the same
+ * process is running are coalesced, if they are identical: the first of them waits and exports the process once more after the running export
+ * has finished, all others wait for this follow-up export and get its result and problems without exporting again. Requests with another
+ * destination or other export options wait for their own follow-up export.
+ */
+public class ProcessExportLock {
+
+    static final String PROBLEM_INTERRUPTED = "The export was cancelled, because the waiting export was interrupted.";
+
+    @Getter
+    private static final ProcessExportLock instance = new ProcessExportLock();
+
+    // all fields of the states are guarded by this lock
+    private final Map<Integer, State> states = new HashMap<>();
+
+    ProcessExportLock() {
+    }
+
+    /**
+     * Wait until the process can be exported. If {@link Permit#isOwner()} is true, the caller must export the process and call
+     * {@link #release(Permit, boolean, List)} afterwards. Otherwise the request was coalesced with an identical export and
+     * {@link Permit#getResult()} and {@link Permit#getProblems()} contain its result.
+     *
+     * @param request the export to run
+     * @return the permit
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public synchronized Permit acquire(Request request) throws InterruptedException {
+        State state = states.get(request.getProcessId());
+        if (state == null) {
+            state = new State();
+            state.running = true;
+            states.put(request.getProcessId(), state);
+            return new Permit(request, true, null);
+        }
+        FollowUp followUp = state.followUps.get(request);
+        if (followUp != null) {
+            // another request already waits to run the same export again, use its result
+            while (!followUp.done) {
+                wait();
+            }
+            return new Permit(request, false, followUp);
+        }
+        followUp = new FollowUp();
+        state.followUps.put(request, followUp);
+        try {
+            while (state.running) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            // give up the follow-up, the waiting requests fail and later requests start a new one
+            state.followUps.remove(request);
+            followUp.problems = Collections.singletonList(PROBLEM_INTERRUPTED);
+            followUp.done = true;
+            if (!state.running && state.followUps.isEmpty()) {
+                states.remove(request.getProcessId());
+            }
+            notifyAll();
+            throw e;
+        }
+        state.running = true;
+        // identical requests from now on need another export
+        state.followUps.remove(request);
+        return new Permit(request, true, followUp);
+    }
+
+    /**
+     * Finish the export of the process and wake up waiting requests
+     *
+     * @param permit the permit returned by {@link #acquire(Request)}
+     * @param result result of the export, passed to the coalesced requests
+     * @param problems problems of the export, passed to the coalesced requests
+     */
+    public synchronized void release(Permit permit, boolean result, List<String> problems) {
+        if (!permit.isOwner()) {
+            return;
+        }
+        State state = states.get(permit.getRequest().getProcessId());
+        state.running = false;
+        if (permit.followUp != null) {
+            permit.followUp.result = result;
+            permit.followUp.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+            permit.followUp.done = true;
+        }
+        if (state.followUps.isEmpty()) {
+            states.remove(permit.getRequest().getProcessId());
+        }
+        notifyAll();
+    }
+
+    /**
+     * Export of a process, only identical requests are coalesced
+     */
+    @Data
+    public static class Request {
+        private final int processId;
+        private final String destination;
+        private final boolean exportImages;
+        private final boolean exportFulltext;
+    }
+
+    public static class Permit {
+        @Getter
+        private final Request request;
+        @Getter
+        private final boolean owner;
+        // follow-up run that this permit belongs to, null for the first export
+        private final FollowUp followUp;
+
+        private Permit(Request request, boolean owner, FollowUp followUp) {
+            this.request = request;
+            this.owner = owner;
+            this.followUp = followUp;
+        }
+
+        /**
+         * @return the result of the export this request was coalesced with
+         */
+        public boolean getResult() {
+            return followUp != null && followUp.result;
+        }
+
+        /**
+         * @return the problems of the export this request was coalesced with
+         */
+        public List<String> getProblems() {
+            return followUp == null ? Collections.emptyList() : followUp.problems;
+        }
+    }
+
+    private static class State {
+        private boolean running;
+        // next exports, requested while the current one is running
+        private final Map<Request, FollowUp> followUps = new HashMap<>();
+    }
+
+    private static class FollowUp {
+        private boolean done;
+        private boolean result;
+        private List<String> problems = Collections.emptyList();
+    }
+}
@@ -0,0 +1,132 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.sub.goobi.helper.NIOFileUtils;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Temporary sibling of an export folder. All files are written into the staging folder first. When the export was successful, the staging
+ * folder replaces the export folder with a rename, so consumers of the export folder never see a partially written export. The previous content
+ * is deleted in the background.
+ */
+@Log4j2
+public class StagingDirectory {
+
+    public static final String STAGING_INFIX = ".staging-";
+    private static final String OBSOLETE_INFIX = ".obsolete-";
+
+    private static final ExecutorService CLEANUP_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lux-export-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Getter
+    private final Path target;
+    @Getter
+    private final Path path;
+
+    private StagingDirectory(Path target, Path path) {
+        this.target = target;
+        this.path = path;
+    }
+
+    /**
+     * Create a new, empty staging folder next to the given export folder.
+     *
+     * @param target the export folder
+     * @return the staging folder
+     * @throws IOException
+     */
+    public static StagingDirectory create(Path target) throws IOException {
+        Path staging = getSiblingPath(target, STAGING_INFIX);
+        StorageProvider.getInstance().createDirectories(staging);
+        return new StagingDirectory(target, staging);
+    }
+
+    /**
+     * Get a hidden, unused path next to the given file.
+     *
+     * @param file the file or folder
+     * @param infix to mark the purpose of the path
+     * @return the path
+     */
+    public static Path getSiblingPath(Path file, String infix) {
+        return file.resolveSibling("." + file.getFileName().toString() + infix + UUID.randomUUID());
+    }
+
+    /**
+     * Replace the export folder with the content of the staging folder. The old export folder is deleted asynchronously. If the staging folder
+     * cannot be moved into place, the old export folder is restored.
+     *
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        Path obsolete = null;
+        if (StorageProvider.getInstance().isFileExists(target)) {
+            obsolete = getSiblingPath(target, OBSOLETE_INFIX);
+            move(target, obsolete);
+        }
+        try {
+            move(path, target);
+        } catch (IOException e) {
+            if (obsolete != null) {
+                try {
+                    move(obsolete, target);
+                } catch (IOException restoreError) {
+                    log.error("Cannot restore export folder {} from {}", target, obsolete, restoreError);
+                    e.addSuppressed(restoreError);
+                }
+            }
+            throw e;
+        }
+        if (obsolete != null) {
+            deleteInBackground(obsolete);
+        }
+    }
+
+    /**
+     * Remove the staging folder without touching the export folder.
+     */
+    public void discard() {
+        deleteInBackground(path);
+    }
+
+    /**
+     * Rename a file or folder. On a local file system the rename is atomic, if the file system supports it.
+     *
+     * @param source the current path
+     * @param destination the new path
+     * @throws IOException
+     */
+    public static void move(Path source, Path destination) throws IOException {
+        if (StorageProvider.getInstance() instanceof NIOFileUtils) {
+            try {
+                Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                log.debug("Atomic move from {} to {} is not supported", source, destination);
+                Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            StorageProvider.getInstance().move(source, destination);
+        }
+    }
+
+    private static void deleteInBackground(Path folder) {
+        CLEANUP_EXECUTOR.execute(() -> {
+            if (!StorageProvider.getInstance().deleteDir(folder)) {
+                log.error("Cannot delete obsolete export folder {}", folder);
+            }
+        });
+    }
+}
@@ -0,0 +1,95 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.vocabulary.Field;
+import org.goobi.vocabulary.VocabRecord;
+
+import lombok.Getter;
+
+/**
+ * Indexed view of a vocabulary record. The fields are indexed once, all lookups of the enrichment are answered from the indexes. Instances are
+ * cached together with the record in the {@link VocabularyRecordCache}.
+ */
+public class VocabRecordView {
+
+    @Getter
+    private final VocabRecord record;
+
+    // first field for each label
+    private final Map<String, Field> fieldsByLabel = new HashMap<>();
+    // last field for each definition label
+    private final Map<String, Field> fieldsByDefinitionLabel = new HashMap<>();
+    // first field for each value
+    private final Map<String, Field> fieldsByValue = new HashMap<>();
+    // language specific values of all fields with a definition label starting with the key
+    private final Map<String, Map<String, String>> valuesByLabelPrefix = new ConcurrentHashMap<>();
+
+    /**
+     * label of the first field in english, or null if the record has no english field
+     */
+    @Getter
+    private final String englishLabel;
+
+    public VocabRecordView(VocabRecord record) {
+        this.record = record;
+        String label = null;
+        for (Field field : getFields()) {
+            if (field.getLabel() != null) {
+                fieldsByLabel.putIfAbsent(field.getLabel(), field);
+            }
+            if (field.getDefinition() != null && field.getDefinition().getLabel() != null) {
+                fieldsByDefinitionLabel.put(field.getDefinition().getLabel(), field);
+            }
+            if (field.getValue() != null) {
+                fieldsByValue.putIfAbsent(field.getValue(), field);
+            }
+            if (label == null && "eng".equals(field.getLanguage())) {
+                label = field.getLabel();
+            }
+        }
+        englishLabel = label;
+    }
+
+    public List<Field> getFields() {
+        return record.getFields() == null ? Collections.emptyList() : record.getFields();
+    }
+
+    public Field getFieldByLabel(String label) {
+        return fieldsByLabel.get(label);
+    }
+
+    public String getValueByDefinitionLabel(String definitionLabel) {
+        Field field = fieldsByDefinitionLabel.get(definitionLabel);
+        return field == null ? null : field.getValue();
+    }
+
+    public Field getFieldByValue(String value) {
+        return value == null ? null : fieldsByValue.get(value);
+    }
+
+    /**
+     * Get the values of all fields whose definition label starts with the given prefix, grouped by the language of the definition. Fields without
+     * language are ignored.
+     *
+     * @param definitionLabelPrefix the prefix, e.g. 'Relationship'
+     * @return map with the language as key
+     */
+    public Map<String, String> getValuesByLanguage(String definitionLabelPrefix) {
+        return valuesByLabelPrefix.computeIfAbsent(definitionLabelPrefix, prefix -> {
+            Map<String, String> values = new HashMap<>();
+            for (Field field : getFields()) {
+                if (field.getDefinition() != null && field.getDefinition().getLabel() != null && field.getDefinition().getLabel().startsWith(prefix)
+                        && StringUtils.isNotBlank(field.getDefinition().getLanguage())) {
+                    values.put(field.getDefinition().getLanguage(), field.getValue());
+                }
+            }
+            return values;
+        });
+    }
+}
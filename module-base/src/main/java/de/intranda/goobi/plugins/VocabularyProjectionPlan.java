@@ -0,0 +1,119 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.vocabulary.Definition;
+import org.goobi.vocabulary.Field;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+
+/**
+ * Mapping from the field definitions of a vocabulary to the metadata types of a ruleset. The metadata name of a field is '_' + label + '_' +
+ * language, without whitespace and in lower case. The label is the label of the first english field of the record, or the label of the field
+ * itself, if the vocabulary has no english field. Fields without a matching metadata type are dropped when the plan is created.
+ */
+@Log4j2
+public class VocabularyProjectionPlan {
+
+    // metadata type for each mapped definition id, in the order of the fields
+    private final Map<Integer, MetadataType> typesByDefinition;
+
+    // ids of all definitions of the vocabulary, including the ones without metadata type
+    private final Set<Integer> definitionIds;
+
+    private VocabularyProjectionPlan(Map<Integer, MetadataType> typesByDefinition, Set<Integer> definitionIds) {
+        this.typesByDefinition = typesByDefinition;
+        this.definitionIds = definitionIds;
+    }
+
+    /**
+     * Create the plan for the vocabulary of the given record. All records of a vocabulary share the same field definitions, so any record can be
+     * used.
+     *
+     * @param types the metadata types of the ruleset
+     * @param view a record of the vocabulary
+     * @return the plan
+     */
+    public static VocabularyProjectionPlan create(MetadataTypeRegistry types, VocabRecordView view) {
+        Map<Integer, MetadataType> typesByDefinition = new LinkedHashMap<>();
+        Set<Integer> definitionIds = new HashSet<>();
+        for (Field field : view.getFields()) {
+            Definition definition = field.getDefinition();
+            if (definition == null || definition.getId() == null) {
+                continue;
+            }
+            definitionIds.add(definition.getId());
+            String recordLabel = view.getEnglishLabel();
+            if (StringUtils.isBlank(recordLabel)) {
+                recordLabel = field.getLabel();
+            }
+            String metadataName;
+            if (StringUtils.isNotBlank(definition.getLanguage())) {
+                metadataName = "_" + recordLabel + "_" + definition.getLanguage();
+            } else {
+                metadataName = "_" + recordLabel;
+            }
+            metadataName = metadataName.replace(" ", "").toLowerCase();
+            MetadataType type = types.getMetadataType(metadataName);
+            if (type != null) {
+                typesByDefinition.put(definition.getId(), type);
+            }
+        }
+        log.debug("Mapped {} fields of vocabulary {} to metadata types", typesByDefinition.size(), view.getRecord().getVocabularyId());
+        return new VocabularyProjectionPlan(Collections.unmodifiableMap(typesByDefinition), definitionIds);
+    }
+
+    /**
+     * Add the values of all mapped fields of the record as metadata to the parent of the given metadata.
+     *
+     * @param view the record
+     * @param metadata the metadata that references the record
+     */
+    public void apply(VocabRecordView view, Metadata metadata) {
+        if (typesByDefinition.isEmpty()) {
+            return;
+        }
+        for (Field field : view.getFields()) {
+            if (field.getDefinition() == null || StringUtils.isBlank(field.getValue())) {
+                continue;
+            }
+            MetadataType type = typesByDefinition.get(field.getDefinition().getId());
+            if (type != null) {
+                try {
+                    Metadata vocabMetadata = new Metadata(type);
+                    vocabMetadata.setValue(field.getValue());
+                    metadata.getParent().addMetadata(vocabMetadata);
+                } catch (MetadataTypeNotAllowedException e) {
+                    // metadata is not allowed in this element
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the plan knows all field definitions of the record
+     *
+     * @param view a record of the vocabulary
+     * @return false, if the record contains a definition that did not exist when the plan was created
+     */
+    public boolean isCreatedFor(VocabRecordView view) {
+        for (Field field : view.getFields()) {
+            if (field.getDefinition() != null && field.getDefinition().getId() != null && !definitionIds.contains(field.getDefinition().getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return typesByDefinition.isEmpty();
+    }
+}
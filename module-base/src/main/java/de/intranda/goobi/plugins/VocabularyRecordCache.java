@@ -0,0 +1,294 @@
+package de.intranda.goobi.plugins;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.goobi.vocabulary.VocabRecord;
+import org.goobi.vocabulary.Vocabulary;
+
+import de.sub.goobi.persistence.managers.VocabularyManager;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache for vocabulary records, shared by all exports. Each record is stored as {@link VocabRecordView}, so its fields are indexed only once.
+ * The cache holds a limited number of records, the least recently used records are removed first. Each record expires after a configured time,
+ * so changes in the vocabulary become visible without restart. Changes can be published immediately with the invalidation methods.
+ * 
+ * For lookups by record title and for prefetching many records of the same vocabulary, all records of the vocabulary are loaded once into an
+ * index. The index is used for further lookups of the vocabulary until it expires after the same time as the records.
+ */
+@Log4j2
+public class VocabularyRecordCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+
+    @Getter
+    private static final VocabularyRecordCache instance = new VocabularyRecordCache(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+
+    private final Map<RecordKey, CacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        private static final long serialVersionUID = 5211474425834342934L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RecordKey, CacheEntry> eldest) {
+            return size() > maximumSize;
+        }
+    };
+
+    private final Map<Integer, VocabularyIndex> vocabularyIndexes = new ConcurrentHashMap<>();
+
+    // one lock per vocabulary, so a vocabulary is loaded only once even if many exports need it at the same time
+    private final Map<Integer, Object> vocabularyLocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile int maximumSize;
+    private volatile long timeToLive;
+
+    VocabularyRecordCache(int maximumSize, long timeToLive) {
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Change size and expiration time of the cache
+     *
+     * @param maximumSize maximum number of cached records
+     * @param timeToLive time in milliseconds after a record is loaded again
+     */
+    public synchronized void configure(int maximumSize, long timeToLive) {
+        if (this.maximumSize != maximumSize || this.timeToLive != timeToLive) {
+            this.maximumSize = Math.max(1, maximumSize);
+            this.timeToLive = Math.max(0, timeToLive);
+            entries.clear();
+            vocabularyIndexes.clear();
+        }
+    }
+
+    /**
+     * Get a record from the cache or load it from the database
+     *
+     * @param vocabularyId id of the vocabulary
+     * @param recordId id of the record
+     * @return the record or null, if it does not exist
+     */
+    public VocabRecordView getRecord(int vocabularyId, int recordId) {
+        RecordKey key = new RecordKey(vocabularyId, recordId);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.getExpires() > now) {
+                hits.incrementAndGet();
+                return entry.getView();
+            }
+        }
+        VocabularyIndex index = vocabularyIndexes.get(vocabularyId);
+        if (index != null && index.getExpires() > now) {
+            // the complete vocabulary was loaded before, no database request is needed
+            hits.incrementAndGet();
+            VocabRecordView view = index.getRecordsById().get(recordId);
+            synchronized (this) {
+                entries.put(key, new CacheEntry(view, index.getExpires()));
+            }
+            return view;
+        }
+        misses.incrementAndGet();
+        // load outside of the lock, a slow database must not block other exports
+        VocabRecord vocabRecord = VocabularyManager.getRecord(vocabularyId, recordId);
+        return put(key, vocabRecord, now);
+    }
+
+    /**
+     * Load the given records into the cache, if they are not cached yet. If many records of the same vocabulary are missing, the complete
+     * vocabulary is loaded with a single request and kept as index, otherwise the records are loaded one by one.
+     *
+     * @param recordIds record ids, grouped by vocabulary id
+     * @param vocabulariesWithTitles vocabularies that need a title index
+     * @param bulkThreshold minimal number of missing records to load the complete vocabulary
+     */
+    public void prefetch(Map<Integer, Set<Integer>> recordIds, Set<Integer> vocabulariesWithTitles, int bulkThreshold) {
+        for (Map.Entry<Integer, Set<Integer>> entry : recordIds.entrySet()) {
+            int vocabularyId = entry.getKey();
+            Set<Integer> missing = new HashSet<>();
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (Integer recordId : entry.getValue()) {
+                    CacheEntry cached = entries.get(new RecordKey(vocabularyId, recordId));
+                    if (cached == null || cached.getExpires() <= now) {
+                        missing.add(recordId);
+                    }
+                }
+            }
+            if (missing.size() >= bulkThreshold) {
+                // records from an index that was loaded before are hits, they need no database request
+                (hasVocabularyIndex(vocabularyId, now) ? hits : misses).addAndGet(missing.size());
+                VocabularyIndex index = getVocabularyIndex(vocabularyId);
+                synchronized (this) {
+                    for (Integer recordId : missing) {
+                        // records that do not exist are remembered as well
+                        entries.put(new RecordKey(vocabularyId, recordId), new CacheEntry(index.getRecordsById().get(recordId), index.getExpires()));
+                    }
+                }
+            } else {
+                for (Integer recordId : missing) {
+                    getRecord(vocabularyId, recordId);
+                }
+            }
+        }
+        for (Integer vocabularyId : vocabulariesWithTitles) {
+            getVocabularyIndex(vocabularyId);
+        }
+    }
+
+    /**
+     * Find a record by its title. On first access all records of the vocabulary are loaded and indexed. If multiple records have the same title,
+     * the first one is returned.
+     *
+     * @param vocabularyId id of the vocabulary
+     * @param title title of the record
+     * @return the record or null, if the vocabulary does not contain a record with this title
+     */
+    public VocabRecordView getRecordByTitle(int vocabularyId, String title) {
+        (hasVocabularyIndex(vocabularyId, System.currentTimeMillis()) ? hits : misses).incrementAndGet();
+        return getVocabularyIndex(vocabularyId).getRecordsByTitle().get(title);
+    }
+
+    private boolean hasVocabularyIndex(int vocabularyId, long now) {
+        VocabularyIndex index = vocabularyIndexes.get(vocabularyId);
+        return index != null && index.getExpires() > now;
+    }
+
+    private VocabularyIndex getVocabularyIndex(int vocabularyId) {
+        VocabularyIndex index = vocabularyIndexes.get(vocabularyId);
+        if (index != null && index.getExpires() > System.currentTimeMillis()) {
+            return index;
+        }
+        synchronized (vocabularyLocks.computeIfAbsent(vocabularyId, id -> new Object())) {
+            // another export may have loaded the vocabulary in the meantime
+            long now = System.currentTimeMillis();
+            index = vocabularyIndexes.get(vocabularyId);
+            if (index == null || index.getExpires() <= now) {
+                index = createVocabularyIndex(vocabularyId, now);
+                vocabularyIndexes.put(vocabularyId, index);
+            }
+            return index;
+        }
+    }
+
+    private VocabularyIndex createVocabularyIndex(int vocabularyId, long now) {
+        Map<Integer, VocabRecordView> recordsById = new HashMap<>();
+        Map<String, VocabRecordView> recordsByTitle = new HashMap<>();
+        Vocabulary vocabulary = VocabularyManager.getVocabularyById(vocabularyId);
+        if (vocabulary != null) {
+            VocabularyManager.getAllRecords(vocabulary);
+            for (VocabRecord vocabRecord : vocabulary.getRecords()) {
+                VocabRecordView view = new VocabRecordView(vocabRecord);
+                recordsById.put(vocabRecord.getId(), view);
+                if (vocabRecord.getTitle() != null) {
+                    recordsByTitle.putIfAbsent(vocabRecord.getTitle(), view);
+                }
+            }
+        }
+        log.debug("Indexed {} records of vocabulary {}", recordsById.size(), vocabularyId);
+        VocabularyIndex index = new VocabularyIndex(recordsById, recordsByTitle, now + timeToLive);
+        // add the loaded records to the cache as long as there is space left, without removing other records
+        synchronized (this) {
+            for (Map.Entry<Integer, VocabRecordView> entry : recordsById.entrySet()) {
+                if (entries.size() >= maximumSize) {
+                    break;
+                }
+                entries.putIfAbsent(new RecordKey(vocabularyId, entry.getKey()), new CacheEntry(entry.getValue(), index.getExpires()));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Add a record that was loaded by someone else, e.g. as part of a complete vocabulary
+     *
+     * @param vocabRecord the record
+     */
+    public void addRecord(VocabRecord vocabRecord) {
+        put(new RecordKey(vocabRecord.getVocabularyId(), vocabRecord.getId()), vocabRecord, System.currentTimeMillis());
+    }
+
+    private VocabRecordView put(RecordKey key, VocabRecord vocabRecord, long loaded) {
+        // create the view outside of the lock
+        VocabRecordView view = vocabRecord == null ? null : new VocabRecordView(vocabRecord);
+        synchronized (this) {
+            entries.put(key, new CacheEntry(view, loaded + timeToLive));
+        }
+        return view;
+    }
+
+    /**
+     * Remove a single record from the cache
+     *
+     * @param vocabularyId id of the vocabulary
+     * @param recordId id of the record
+     */
+    public synchronized void invalidate(int vocabularyId, int recordId) {
+        entries.remove(new RecordKey(vocabularyId, recordId));
+        // the title may have changed
+        vocabularyIndexes.remove(vocabularyId);
+    }
+
+    /**
+     * Remove all records of a vocabulary from the cache
+     *
+     * @param vocabularyId id of the vocabulary
+     */
+    public synchronized void invalidateVocabulary(int vocabularyId) {
+        entries.keySet().removeIf(key -> key.getVocabularyId() == vocabularyId);
+        vocabularyIndexes.remove(vocabularyId);
+    }
+
+    /**
+     * Remove all records from the cache
+     */
+    public synchronized void invalidateAll() {
+        log.debug("Clear vocabulary record cache");
+        entries.clear();
+        vocabularyIndexes.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Data
+    private static class RecordKey {
+        private final int vocabularyId;
+        private final int recordId;
+    }
+
+    @Data
+    private static class VocabularyIndex {
+        private final Map<Integer, VocabRecordView> recordsById;
+        // first record of each title
+        private final Map<String, VocabRecordView> recordsByTitle;
+        private final long expires;
+    }
+
+    @Data
+    private static class CacheEntry {
+        private final VocabRecordView view;
+        private final long expires;
+    }
+}
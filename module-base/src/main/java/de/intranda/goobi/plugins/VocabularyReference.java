@@ -0,0 +1,51 @@
+package de.intranda.goobi.plugins;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Data;
+import ugh.dl.Metadata;
+
+/**
+ * Reference from a metadata to a vocabulary record, parsed from the authority value. The authority value ends with the vocabulary id and either
+ * the record id or the record title, e.g. 'https://example.com/vocabularies/12/345'.
+ */
+@Data
+public class VocabularyReference {
+
+    private final int vocabularyId;
+    // null, if the record is referenced by its title
+    private final Integer recordId;
+    private final String recordTitle;
+
+    /**
+     * Get the vocabulary reference of a metadata
+     *
+     * @param metadata the metadata to check
+     * @return the reference or null, if the metadata does not reference a vocabulary record
+     */
+    public static VocabularyReference parse(Metadata metadata) {
+        String authorityValue = metadata.getAuthorityValue();
+        if (StringUtils.isBlank(authorityValue) || metadata.getAuthorityURI() == null || !metadata.getAuthorityURI().contains("vocabulary")) {
+            return null;
+        }
+        int recordSeparator = authorityValue.lastIndexOf('/');
+        if (recordSeparator == -1) {
+            return null;
+        }
+        String vocabRecordID = authorityValue.substring(recordSeparator + 1);
+        String vocabRecordUrl = authorityValue.substring(0, recordSeparator);
+        String vocabularyID = vocabRecordUrl.substring(vocabRecordUrl.lastIndexOf('/') + 1);
+        if (!StringUtils.isNumeric(vocabularyID)) {
+            return null;
+        }
+        try {
+            int vocabularyId = Integer.parseInt(vocabularyID);
+            if (StringUtils.isNumeric(vocabRecordID)) {
+                return new VocabularyReference(vocabularyId, Integer.parseInt(vocabRecordID), null);
+            }
+            return new VocabularyReference(vocabularyId, null, vocabRecordID);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
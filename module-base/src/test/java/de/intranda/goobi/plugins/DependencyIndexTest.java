@@ -0,0 +1,117 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        indexFile = folder.newFolder().toPath().resolve("dependencies.tsv");
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        DependencyIndex index = DependencyIndex.getInstance(indexFile);
+        index.update(1, dependencies("10", 5, 50));
+        index.update(2, dependencies("10", 5, 51));
+        index.save();
+        // replaced and removed dependencies are appended
+        index.update(1, dependencies("11", 5, 50));
+        index.remove(2);
+        index.update(3, dependencies(null, 6, 60));
+        index.save();
+
+        DependencyIndex loaded = load(indexFile);
+        assertEquals(Collections.emptySet(), loaded.getDependentProcesses("10"));
+        assertEquals(Collections.singleton(1), loaded.getDependentProcesses("11"));
+        assertEquals(Collections.singleton(1), loaded.getDependentProcesses(5, 50));
+        assertEquals(Collections.emptySet(), loaded.getDependentProcesses(5, 51));
+        assertEquals(Collections.singleton(3), loaded.getDependentProcessesOfVocabulary(6));
+    }
+
+    @Test
+    public void testUnchangedDependenciesAreNotSaved() throws IOException {
+        DependencyIndex index = DependencyIndex.getInstance(indexFile);
+        index.update(1, dependencies("10", 5, 50));
+        index.save();
+        List<String> lines = Files.readAllLines(indexFile);
+
+        index.update(1, dependencies("10", 5, 50));
+        index.update(2, new DependencyIndex.Dependencies());
+        index.remove(3);
+        index.save();
+        assertEquals(lines, Files.readAllLines(indexFile));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        DependencyIndex index = DependencyIndex.getInstance(indexFile);
+        for (int i = 0; i < 2000; i++) {
+            index.update(1, dependencies(String.valueOf(i), 5, i));
+            index.save();
+        }
+        // each save appends three lines until the file is compacted
+        assertTrue(Files.readAllLines(indexFile).size() <= 1000);
+
+        DependencyIndex loaded = load(indexFile);
+        assertEquals(Collections.singleton(1), loaded.getDependentProcesses("1999"));
+        assertEquals(Collections.emptySet(), loaded.getDependentProcesses("1998"));
+        assertEquals(Collections.singleton(1), loaded.getDependentProcesses(5, 1999));
+    }
+
+    @Test
+    public void testInvalidLinesAreIgnored() throws IOException {
+        DependencyIndex index = DependencyIndex.getInstance(indexFile);
+        index.update(1, dependencies("10", 5, 50));
+        index.update(2, dependencies("20", 5, 50));
+        index.save();
+        // last line of an interrupted save
+        Files.write(indexFile, "2\tremoved\n2\trec".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        Path copy = copy(indexFile);
+        DependencyIndex loaded = DependencyIndex.getInstance(copy);
+        assertEquals(Collections.singleton(1), loaded.getDependentProcesses("10"));
+        assertEquals(Collections.emptySet(), loaded.getDependentProcesses("20"));
+
+        // the next save writes the file again
+        loaded.save();
+        assertEquals(new HashSet<>(Arrays.asList("1\tagent\t10", "1\trecord\t5/50")), new HashSet<>(Files.readAllLines(copy)));
+    }
+
+    // a second index file with the same content, because getInstance returns the index that was already loaded
+    private Path copy(Path file) throws IOException {
+        return Files.copy(file, folder.newFolder().toPath().resolve(file.getFileName()));
+    }
+
+    private DependencyIndex load(Path file) throws IOException {
+        return DependencyIndex.getInstance(copy(file));
+    }
+
+    private static DependencyIndex.Dependencies dependencies(String agent, int vocabularyId, int recordId) {
+        DependencyIndex.Dependencies dependencies = new DependencyIndex.Dependencies();
+        dependencies.addAgent(agent);
+        dependencies.addRecord(vocabularyId, recordId);
+        return dependencies;
+    }
+}
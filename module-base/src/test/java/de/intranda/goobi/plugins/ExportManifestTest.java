@@ -0,0 +1,163 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportManifestTest {
+
+    private static final String MANIFEST = ".export_manifest";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path destination;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFolder("source").toPath();
+        destination = folder.newFolder("destination").toPath();
+    }
+
+    @Test
+    public void testEmptyManifest() throws IOException {
+        Path file = createFile(source.resolve("00000001.tif"), "image");
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(file, export(file)));
+        assertEquals(0, manifest.deleteRemovedFiles());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        Path alto = createFile(source.resolve("00000001.xml"), "alto");
+        exportAndSave(false, image, alto);
+
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertTrue(manifest.isUnchanged(image, destination.resolve("00000001.tif")));
+        assertTrue(manifest.isUnchanged(alto, destination.resolve("00000001.xml")));
+    }
+
+    @Test
+    public void testChangedSource() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        exportAndSave(false, image);
+
+        createFile(image, "changed image");
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(image, destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testChangedModificationDate() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        exportAndSave(false, image);
+
+        Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 10000));
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(image, destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testMissingTarget() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        exportAndSave(false, image);
+
+        Files.delete(destination.resolve("00000001.tif"));
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(image, destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testChangedTarget() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        exportAndSave(false, image);
+
+        createFile(destination.resolve("00000001.tif"), "truncated");
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(image, destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testDigest() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        exportAndSave(true, image);
+
+        // same size and modification date, but different content
+        FileTime lastModified = Files.getLastModifiedTime(image);
+        createFile(image, "IMAGE");
+        Files.setLastModifiedTime(image, lastModified);
+
+        assertTrue(ExportManifest.load(destination, MANIFEST, false).isUnchanged(image, destination.resolve("00000001.tif")));
+        assertFalse(ExportManifest.load(destination, MANIFEST, true).isUnchanged(image, destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testDeleteRemovedFiles() throws IOException {
+        Path first = createFile(source.resolve("00000001.tif"), "first");
+        Path second = createFile(source.resolve("00000002.tif"), "second");
+        exportAndSave(false, first, second);
+        Files.delete(second);
+
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertTrue(manifest.isUnchanged(first, destination.resolve("00000001.tif")));
+        assertEquals(1, manifest.deleteRemovedFiles());
+        assertTrue(Files.exists(destination.resolve("00000001.tif")));
+        assertFalse(Files.exists(destination.resolve("00000002.tif")));
+        // files that are not listed in the manifest are never deleted
+        assertTrue(Files.exists(destination.resolve(MANIFEST)));
+    }
+
+    @Test
+    public void testDeleteKeepsCopiedFiles() throws IOException {
+        Path first = createFile(source.resolve("00000001.tif"), "first");
+        exportAndSave(false, first);
+
+        createFile(first, "changed first");
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(first, destination.resolve("00000001.tif")));
+        manifest.addFile(first, export(first));
+        assertEquals(0, manifest.deleteRemovedFiles());
+        assertTrue(Files.exists(destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testUnreadableManifest() throws IOException {
+        Path image = createFile(source.resolve("00000001.tif"), "image");
+        exportAndSave(false, image);
+        createFile(destination.resolve(MANIFEST), "00000001.tif\tnot a number\t0\n");
+
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, false);
+        assertFalse(manifest.isUnchanged(image, destination.resolve("00000001.tif")));
+        assertEquals(0, manifest.deleteRemovedFiles());
+    }
+
+    private void exportAndSave(boolean useDigest, Path... files) throws IOException {
+        ExportManifest manifest = ExportManifest.load(destination, MANIFEST, useDigest);
+        for (Path file : files) {
+            manifest.addFile(file, export(file));
+        }
+        manifest.save();
+    }
+
+    private Path export(Path file) throws IOException {
+        return Files.copy(file, destination.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private static Path createFile(Path file, String content) throws IOException {
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
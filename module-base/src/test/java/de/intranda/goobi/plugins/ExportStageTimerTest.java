@@ -0,0 +1,40 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ExportStageTimerTest {
+
+    @Test
+    public void testSubStagesAreNotCountedInTotal() throws InterruptedException {
+        ExportStageTimer timer = new ExportStageTimer();
+        try (ExportStageTimer.Measurement files = timer.start("exportFiles")) {
+            try (ExportStageTimer.Measurement images = timer.start("imageDownload", "exportFiles")) {
+                Thread.sleep(20);
+            }
+            Map<String, Long> weights = new HashMap<>();
+            weights.put("imageDownload", 1L);
+            timer.distribute(1_000_000, weights, "awaitCopies", "exportFiles");
+        }
+        try (ExportStageTimer.Measurement mets = timer.start("writeMets")) {
+            Thread.sleep(5);
+        }
+
+        long files = 0;
+        long mets = 0;
+        for (ExportStageTimer.Stage stage : timer.getStages()) {
+            if ("exportFiles".equals(stage.getName())) {
+                files = stage.getNanos();
+            } else if ("writeMets".equals(stage.getName())) {
+                mets = stage.getNanos();
+            }
+        }
+        assertEquals(files + mets, timer.getTotalNanos());
+        assertTrue(timer.getSummary().contains("exportFiles/imageDownload: "));
+    }
+}
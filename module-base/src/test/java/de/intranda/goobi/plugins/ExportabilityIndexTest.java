@@ -0,0 +1,165 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportabilityIndexTest {
+
+    private static final Path META = Paths.get("src/test/resources/resources/meta.xml");
+    private static final String PUBLISHED = "<goobi:metadata name=\"Published\">Y</goobi:metadata>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIsPublished() {
+        assertTrue(ExportabilityIndex.isPublished(Arrays.asList("N", "Y")));
+        assertTrue(ExportabilityIndex.isPublished(Collections.singletonList("j")));
+        assertFalse(ExportabilityIndex.isPublished(Arrays.asList("N", null, "Yes")));
+        assertFalse(ExportabilityIndex.isPublished(Collections.emptyList()));
+    }
+
+    @Test
+    public void testReadPublished() throws IOException {
+        assertTrue(ExportabilityIndex.readPublished(META));
+    }
+
+    @Test
+    public void testReadUnpublished() throws IOException {
+        // the groups of the record are still marked as published, only the value of the record itself is used
+        assertFalse(ExportabilityIndex.readPublished(replaceFirst(META, PUBLISHED, "<goobi:metadata name=\"Published\">N</goobi:metadata>")));
+        assertFalse(ExportabilityIndex.readPublished(replaceFirst(META, PUBLISHED, "")));
+    }
+
+    @Test
+    public void testReadUnknownFormat() throws IOException {
+        Path file = Files.write(folder.newFile().toPath(), "<record />".getBytes(StandardCharsets.UTF_8));
+        assertNull(ExportabilityIndex.readPublished(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadMalformedFile() throws IOException {
+        // the caller falls back to the complete parse of the file
+        List<String> lines = Files.readAllLines(META, StandardCharsets.UTF_8);
+        ExportabilityIndex.readPublished(Files.write(folder.newFile().toPath(), lines.subList(0, 14), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path indexFile = folder.newFolder().toPath().resolve("exportability.tsv");
+        ExportabilityIndex index = ExportabilityIndex.getInstance(indexFile);
+        index.recordExport(1, true, 100);
+        index.recordStatus(2, false, 200);
+        index.save();
+        // changed entries are appended
+        index.recordStatus(1, true, 300);
+        index.recordStatus(2, true, 400);
+        index.save();
+        assertEquals(4, Files.readAllLines(indexFile).size());
+
+        ExportabilityIndex loaded = ExportabilityIndex.getInstance(copy(indexFile));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), loaded.getPublishedProcesses());
+        assertEquals(300, loaded.getEntry(1).getMetadataLastModified());
+        assertEquals(index.getEntry(1).getLastExport(), loaded.getEntry(1).getLastExport());
+        assertEquals(0, loaded.getEntry(2).getLastExport());
+        assertFalse(loaded.isScanned());
+    }
+
+    @Test
+    public void testUnchangedStatusIsNotSaved() throws IOException {
+        Path indexFile = folder.newFolder().toPath().resolve("exportability.tsv");
+        ExportabilityIndex index = ExportabilityIndex.getInstance(indexFile);
+        index.recordStatus(1, false, 100);
+        index.save();
+        index.recordStatus(1, false, 100);
+        index.save();
+        assertEquals(1, Files.readAllLines(indexFile).size());
+    }
+
+    @Test
+    public void testRescan() throws IOException, InterruptedException {
+        Path metadataFolder = folder.newFolder("metadata").toPath();
+        createProcess(metadataFolder, 1, "Y");
+        createProcess(metadataFolder, 2, "N");
+        Path indexFile = folder.newFolder().toPath().resolve("exportability.tsv");
+        ExportabilityIndex index = ExportabilityIndex.getInstance(indexFile);
+        index.recordExport(3, true, 100);
+        assertFalse(index.isScanned());
+
+        assertEquals(2, index.rescan(metadataFolder, 2));
+        assertTrue(index.isScanned());
+        // process 3 does not exist anymore
+        assertEquals(Collections.singleton(1), index.getPublishedProcesses());
+        assertEquals(Collections.singleton(1), index.getChangedPublishedProcesses());
+        // unchanged files are not read again
+        assertEquals(0, index.rescan(metadataFolder, 2));
+
+        ExportabilityIndex loaded = ExportabilityIndex.getInstance(copy(indexFile));
+        assertTrue(loaded.isScanned());
+        assertEquals(Collections.singleton(1), loaded.getPublishedProcesses());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path indexFile = folder.newFolder().toPath().resolve("exportability.tsv");
+        ExportabilityIndex index = ExportabilityIndex.getInstance(indexFile);
+        for (int i = 0; i < 2000; i++) {
+            index.recordExport(i % 10, true, i);
+            index.save();
+        }
+        assertTrue(Files.readAllLines(indexFile).size() <= 1000);
+
+        ExportabilityIndex loaded = ExportabilityIndex.getInstance(copy(indexFile));
+        assertEquals(10, loaded.getPublishedProcesses().size());
+        assertEquals(1999, loaded.getEntry(9).getMetadataLastModified());
+    }
+
+    @Test
+    public void testInvalidLinesAreIgnored() throws IOException {
+        Path indexFile = folder.newFolder().toPath().resolve("exportability.tsv");
+        Files.write(indexFile, Arrays.asList("1\tY\t100\t200", "2\tN\t100\t0", "2\tY\t30"), StandardCharsets.UTF_8);
+
+        ExportabilityIndex index = ExportabilityIndex.getInstance(indexFile);
+        assertEquals(Collections.singleton(1), index.getPublishedProcesses());
+        assertFalse(index.getEntry(2).isPublished());
+        // the next save writes the file again
+        index.save();
+        assertEquals(2, Files.readAllLines(indexFile).size());
+    }
+
+    private void createProcess(Path metadataFolder, int processId, String published) throws IOException {
+        Path processFolder = Files.createDirectories(metadataFolder.resolve(String.valueOf(processId)));
+        String content = new String(Files.readAllBytes(META), StandardCharsets.UTF_8);
+        content = content.replaceFirst(PUBLISHED, "<goobi:metadata name=\"Published\">" + published + "</goobi:metadata>");
+        Files.write(processFolder.resolve("meta.xml"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // a second index file with the same content, because getInstance returns the index that was already loaded
+    private Path copy(Path file) throws IOException {
+        return Files.copy(file, folder.newFolder().toPath().resolve(file.getFileName()));
+    }
+
+    private Path replaceFirst(Path file, String search, String replacement) throws IOException {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(content.contains(search));
+        int index = content.indexOf(search);
+        content = content.substring(0, index) + replacement + content.substring(index + search.length());
+        return Files.write(folder.newFile().toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,87 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares the copy strategies of the {@link FileTransferEngine} on a local file system. This is not a unit test, run it manually with an optional
+ * working directory as argument:
+ * 
+ * <pre>
+ * java -cp ... de.intranda.goobi.plugins.FileTransferBenchmark /path/to/folder
+ * </pre>
+ * 
+ * Two scenarios are measured: a few large files (like TIFF masters) and many small files (like ALTO files). Files.copy is used as reference, as
+ * this is what the local storage provider does.
+ */
+public class FileTransferBenchmark {
+
+    private static final int LARGE_FILES = 5;
+    private static final int LARGE_FILE_SIZE = 200 * 1024 * 1024;
+    private static final int SMALL_FILES = 5000;
+    private static final int SMALL_FILE_SIZE = 20 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        Path workDir = args.length > 0 ? Files.createTempDirectory(Path.of(args[0]), "benchmark") : Files.createTempDirectory("benchmark");
+        try {
+            List<Path> tiffs = createFiles(workDir.resolve("tif"), LARGE_FILES, LARGE_FILE_SIZE, ".tif");
+            List<Path> altos = createFiles(workDir.resolve("alto"), SMALL_FILES, SMALL_FILE_SIZE, ".xml");
+
+            for (String scenario : List.of("tif", "alto")) {
+                List<Path> files = "tif".equals(scenario) ? tiffs : altos;
+                System.out.println("Scenario: " + files.size() + " " + scenario + " files");
+                measure("Files.copy", files, workDir.resolve("target_copy_" + scenario), null);
+                measure("channel", files, workDir.resolve("target_channel_" + scenario),
+                        new FileTransferEngine(FileTransferEngine.Strategy.CHANNEL, true));
+                measure("hardlink", files, workDir.resolve("target_link_" + scenario),
+                        new FileTransferEngine(FileTransferEngine.Strategy.HARDLINK, true));
+            }
+        } finally {
+            FileUtils.deleteDirectory(workDir.toFile());
+        }
+    }
+
+    private static void measure(String name, List<Path> files, Path targetFolder, FileTransferEngine engine) throws IOException {
+        Files.createDirectories(targetFolder);
+        long start = System.nanoTime();
+        for (Path file : files) {
+            Path target = targetFolder.resolve(file.getFileName());
+            if (engine == null) {
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                engine.copy(file, target);
+            }
+        }
+        long duration = System.nanoTime() - start;
+        System.out.println(String.format("  %-12s %8d ms", name, duration / 1_000_000));
+    }
+
+    private static List<Path> createFiles(Path folder, int count, int size, String extension) throws IOException {
+        Files.createDirectories(folder);
+        Random random = new Random(42);
+        byte[] data = new byte[Math.min(size, 1024 * 1024)];
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = folder.resolve(String.format("%08d", i) + extension);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                int written = 0;
+                while (written < size) {
+                    random.nextBytes(data);
+                    int length = Math.min(data.length, size - written);
+                    out.write(data, 0, length);
+                    written += length;
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+}
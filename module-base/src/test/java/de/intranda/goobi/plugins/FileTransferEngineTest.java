@@ -0,0 +1,63 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileTransferEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChannelCopy() throws IOException {
+        Path source = createFile(folder.getRoot().toPath().resolve("source.tif"), "image");
+        Files.setLastModifiedTime(source, FileTime.fromMillis(1_000_000_000_000L));
+        Path target = folder.getRoot().toPath().resolve("target.tif");
+
+        new FileTransferEngine(FileTransferEngine.Strategy.CHANNEL, true).copy(source, target);
+        assertEquals("image", read(target));
+        assertEquals(Files.getLastModifiedTime(source), Files.getLastModifiedTime(target));
+        // no temporary files are left
+        assertEquals(2, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testChannelCopyReplacesTarget() throws IOException {
+        Path source = createFile(folder.getRoot().toPath().resolve("source.tif"), "new");
+        Path target = createFile(folder.getRoot().toPath().resolve("target.tif"), "old and longer");
+
+        new FileTransferEngine(FileTransferEngine.Strategy.CHANNEL, true).copy(source, target);
+        assertEquals("new", read(target));
+    }
+
+    @Test
+    public void testChannelCopyKeepsLinkedMaster() throws IOException {
+        Path master = createFile(folder.getRoot().toPath().resolve("master.tif"), "master");
+        Path target = folder.getRoot().toPath().resolve("target.tif");
+        new FileTransferEngine(FileTransferEngine.Strategy.HARDLINK, true).copy(master, target);
+        assertEquals("master", read(target));
+
+        // the target is a hard link to the master now, copying another file must not change the master
+        Path derivative = createFile(folder.getRoot().toPath().resolve("derivative.tif"), "other");
+        new FileTransferEngine(FileTransferEngine.Strategy.CHANNEL, true).copy(derivative, target);
+        assertEquals("other", read(target));
+        assertEquals("master", read(master));
+    }
+
+    private static Path createFile(Path file, String content) throws IOException {
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,38 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GenerationRuleTest {
+
+    @Test
+    public void testWithoutNumberFormat() {
+        GenerationRule rule = new GenerationRule("lkl12");
+        assertEquals("lkl12", rule.generate(null));
+    }
+
+    @Test
+    public void testZeroPadding() {
+        GenerationRule rule = new GenerationRule("lkl12", "00000");
+        assertEquals("lkl00012", rule.generate(null));
+    }
+
+    @Test
+    public void testMultipleNumbers() {
+        GenerationRule rule = new GenerationRule("a1b22c333d", "00");
+        assertEquals("a01b22c333d", rule.generate(null));
+    }
+
+    @Test
+    public void testDecimalFormat() {
+        GenerationRule rule = new GenerationRule("id-7", "#000.0");
+        assertEquals("id-007.0", rule.generate(null).replace(',', '.'));
+    }
+
+    @Test
+    public void testWithoutNumbers() {
+        GenerationRule rule = new GenerationRule("abc", "00000");
+        assertEquals("abc", rule.generate(null));
+    }
+}
@@ -0,0 +1,157 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+import ugh.fileformats.mets.MetsMods;
+
+public class MetadataGroupReaderTest {
+
+    private static final Path META = Paths.get("src/test/resources/resources/meta.xml");
+    private static final String RULESET = "src/test/resources/resources/entity.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadFirstGroup() throws IOException {
+        MetadataGroupData group = MetadataGroupReader.readFirstGroup(META, "BirthplaceGroup");
+        assertNotNull(group);
+        assertEquals("BirthplaceGroup", group.getType());
+        assertEquals(2, group.getMetadata().size());
+
+        MetadataGroupData.Value birthplace = group.getMetadata().get(0);
+        assertEquals("Birthplace", birthplace.getType());
+        assertEquals("XXX-E01-A08-01", birthplace.getValue());
+        assertEquals("geonames", birthplace.getAuthorityId());
+        assertEquals("http://www.geonames.org/", birthplace.getAuthorityUri());
+        assertEquals("http://www.geonames.org/5128581", birthplace.getAuthorityValue());
+        assertEquals(new MetadataGroupData.Value("Published", "Y", null, null, null), group.getMetadata().get(1));
+
+        assertEquals(1, group.getGroups().size());
+        MetadataGroupData source = group.getGroups().get(0);
+        assertEquals("Source", source.getType());
+        assertEquals(Arrays.asList("ID", "XXX-E01-A08-02", "XXX-E01-A08-03", "XXX-E01-A08-04", "page range"), values(source));
+    }
+
+    @Test
+    public void testReadMissingGroup() throws IOException {
+        assertNull(MetadataGroupReader.readFirstGroup(META, "LocationGroup"));
+        // groups within other groups do not belong to the element
+        assertNull(MetadataGroupReader.readFirstGroup(META, "Source"));
+    }
+
+    @Test
+    public void testReadValues() throws IOException {
+        // the values within groups are ignored
+        assertEquals(Collections.singletonList("Y"), MetadataGroupReader.readValues(META, "Published"));
+        assertEquals(Collections.singletonList("XXX-E01-A01 Entity B"), MetadataGroupReader.readValues(META, "CatalogIDDigital"));
+        assertTrue(MetadataGroupReader.readValues(META, "Identifier").isEmpty());
+        // only the logical section is read
+        assertTrue(MetadataGroupReader.readValues(META, "pathimagefiles").isEmpty());
+    }
+
+    @Test
+    public void testReadValuesWithoutLogicalSection() throws IOException {
+        // other file formats have no dmdSec, the values are unknown
+        Path file = Files.write(folder.newFile().toPath(),
+                "<record><metadata name=\"Published\">Y</metadata></record>".getBytes(StandardCharsets.UTF_8));
+        assertNull(MetadataGroupReader.readValues(file, "Published"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadValuesFromMalformedFile() throws IOException {
+        MetadataGroupReader.readValues(truncate(META, 200), "Unknown");
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadGroupFromMalformedFile() throws IOException {
+        MetadataGroupReader.readFirstGroup(truncate(META, 200), "Unknown");
+    }
+
+    @Test
+    public void testMaterialize() throws UGHException, IOException {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(RULESET);
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(META.toAbsolutePath().toString());
+
+        // the streamed groups must contain the same data as the groups of the complete document
+        for (String groupType : Arrays.asList("ExternalIdentifier", "PersonMainName", "BirthplaceGroup", "ProfessionGroup")) {
+            MetadataGroup expected = ff.getDigitalDocument()
+                    .getLogicalDocStruct()
+                    .getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName(groupType))
+                    .get(0);
+            MetadataGroup actual = MetadataGroupReader.readFirstGroup(META, groupType).materialize(MetadataTypeRegistry.forPrefs(prefs));
+            assertEquals(groupType, describe(expected), describe(actual));
+        }
+    }
+
+    @Test
+    public void testMaterializeUnknownTypes() throws UGHException {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(RULESET);
+        MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
+
+        assertNull(new MetadataGroupData("Unknown", Collections.emptyList(), Collections.emptyList()).materialize(types));
+
+        MetadataGroupData data = new MetadataGroupData("BirthplaceGroup",
+                Arrays.asList(new MetadataGroupData.Value("Unknown", "value", null, null, null),
+                        new MetadataGroupData.Value("Birthplace", "Luxembourg", null, null, null)),
+                Collections.singletonList(new MetadataGroupData("Unknown", Collections.emptyList(), Collections.emptyList())));
+        MetadataGroup group = data.materialize(types);
+        assertEquals(Collections.singletonList("Birthplace=Luxembourg [null null null]"), describe(group));
+    }
+
+    private static List<String> values(MetadataGroupData group) {
+        List<String> values = new ArrayList<>();
+        for (MetadataGroupData.Value value : group.getMetadata()) {
+            values.add(value.getValue());
+        }
+        return values;
+    }
+
+    // non empty values and subgroups of a group, sorted
+    private static List<String> describe(MetadataGroup group) {
+        List<String> description = new ArrayList<>();
+        for (Metadata md : group.getMetadataList()) {
+            if (md.getValue() != null && !md.getValue().isEmpty()) {
+                description.add(md.getType().getName() + "=" + md.getValue() + " [" + md.getAuthorityID() + " " + md.getAuthorityURI() + " "
+                        + md.getAuthorityValue() + "]");
+            }
+        }
+        if (group.getAllMetadataGroups() != null) {
+            for (MetadataGroup subgroup : group.getAllMetadataGroups()) {
+                description.add(subgroup.getType().getName() + describe(subgroup));
+            }
+        }
+        Collections.sort(description);
+        return description;
+    }
+
+    private Path truncate(Path file, int lines) throws IOException {
+        List<String> content = Files.readAllLines(file, StandardCharsets.UTF_8);
+        return Files.write(folder.newFile().toPath(), content.subList(0, lines), StandardCharsets.UTF_8);
+    }
+}
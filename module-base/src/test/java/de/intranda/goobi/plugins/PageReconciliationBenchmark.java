@@ -0,0 +1,85 @@
+package de.intranda.goobi.plugins;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Measures the reconciliation of pages and image files done by enrichFileformat for growing page counts. This is not a unit test, run it
+ * manually from the module folder:
+ *
+ * <pre>
+ * java -cp ... de.intranda.goobi.plugins.PageReconciliationBenchmark [ruleset]
+ * </pre>
+ *
+ * Each document links all pages to the logical element. Every tenth image is missing in the folder and every 20th page references the image of
+ * the previous page, so both kinds of removal are measured. The time per page stays constant if the reconciliation scales linearly.
+ */
+public class PageReconciliationBenchmark {
+
+    private static final int[] PAGE_COUNTS = { 1000, 5000, 10000, 20000, 50000 };
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws UGHException {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(args.length > 0 ? args[0] : "src/test/resources/resources/entity.xml");
+
+        // warm up
+        run(prefs, PAGE_COUNTS[1]);
+
+        System.out.println(String.format("%8s %10s %12s %10s", "pages", "ms", "ns/page", "remaining"));
+        for (int pages : PAGE_COUNTS) {
+            long best = Long.MAX_VALUE;
+            int remaining = 0;
+            for (int i = 0; i < RUNS; i++) {
+                long[] result = run(prefs, pages);
+                best = Math.min(best, result[0]);
+                remaining = (int) result[1];
+            }
+            System.out.println(String.format("%8d %10d %12d %10d", pages, best / 1_000_000, best / pages, remaining));
+        }
+    }
+
+    /**
+     * @return duration in nanoseconds and number of remaining pages
+     */
+    private static long[] run(Prefs prefs, int pages) throws UGHException {
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Person"));
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        dd.setLogicalDocStruct(logical);
+        dd.setPhysicalDocStruct(physical);
+
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        MetadataType physPageNumber = prefs.getMetadataTypeByName("physPageNumber");
+        Set<String> imageNamesInFolder = new HashSet<>();
+        for (int i = 1; i <= pages; i++) {
+            String imageName = String.format("%08d.tif", i % 20 == 0 ? i - 1 : i);
+            if (i % 10 != 0) {
+                imageNamesInFolder.add(imageName);
+            }
+            DocStruct page = dd.createDocStruct(pageType);
+            page.setImageName(imageName);
+            Metadata number = new Metadata(physPageNumber);
+            number.setValue(String.valueOf(i));
+            page.addMetadata(number);
+            physical.addChild(page);
+            logical.addReferenceTo(page, "logical_physical");
+        }
+
+        long start = System.nanoTime();
+        LuxArtistDictionaryExportPlugin.reconcilePages(physical, imageNamesInFolder);
+        long duration = System.nanoTime() - start;
+
+        List<DocStruct> remaining = physical.getAllChildren();
+        return new long[] { duration, remaining == null ? 0 : remaining.size() };
+    }
+}
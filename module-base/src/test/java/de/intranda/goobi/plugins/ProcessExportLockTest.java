@@ -0,0 +1,156 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessExportLockTest {
+
+    private static final ProcessExportLock.Request REQUEST = new ProcessExportLock.Request(1, "/export", true, true);
+
+    private ProcessExportLock lock;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        lock = new ProcessExportLock();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSingleExport() throws InterruptedException {
+        ProcessExportLock.Permit permit = lock.acquire(REQUEST);
+        assertTrue(permit.isOwner());
+        lock.release(permit, true, Collections.emptyList());
+        assertTrue(lock.acquire(REQUEST).isOwner());
+    }
+
+    @Test
+    public void testIdenticalRequestsAreCoalesced() throws Exception {
+        ProcessExportLock.Permit running = lock.acquire(REQUEST);
+
+        AtomicReference<Thread> followUpThread = new AtomicReference<>();
+        Future<Boolean> followUp = executor.submit(() -> {
+            followUpThread.set(Thread.currentThread());
+            ProcessExportLock.Permit permit = lock.acquire(REQUEST);
+            lock.release(permit, true, Arrays.asList("first problem", "second problem"));
+            return permit.isOwner();
+        });
+        awaitWaiting(followUpThread);
+
+        AtomicReference<Thread> coalescedThread = new AtomicReference<>();
+        Future<ProcessExportLock.Permit> coalesced = executor.submit(() -> {
+            coalescedThread.set(Thread.currentThread());
+            return lock.acquire(new ProcessExportLock.Request(1, "/export", true, true));
+        });
+        awaitWaiting(coalescedThread);
+
+        lock.release(running, false, Collections.singletonList("problem of the running export"));
+
+        assertTrue(followUp.get(10, TimeUnit.SECONDS));
+        ProcessExportLock.Permit permit = coalesced.get(10, TimeUnit.SECONDS);
+        assertFalse(permit.isOwner());
+        // the request gets the result of the follow-up export, not of the export that was running when it arrived
+        assertTrue(permit.getResult());
+        assertEquals(Arrays.asList("first problem", "second problem"), permit.getProblems());
+    }
+
+    @Test
+    public void testDifferentRequestsAreNotCoalesced() throws Exception {
+        ProcessExportLock.Permit running = lock.acquire(REQUEST);
+        List<ProcessExportLock.Request> requests = Arrays.asList(new ProcessExportLock.Request(1, "/other", true, true),
+                new ProcessExportLock.Request(1, "/export", false, true), new ProcessExportLock.Request(1, "/export", true, false));
+
+        AtomicInteger concurrentExports = new AtomicInteger(1);
+        AtomicInteger maximum = new AtomicInteger(1);
+        Future<?>[] futures = new Future<?>[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            ProcessExportLock.Request request = requests.get(i);
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            futures[i] = executor.submit(() -> {
+                thread.set(Thread.currentThread());
+                ProcessExportLock.Permit permit = lock.acquire(request);
+                maximum.accumulateAndGet(concurrentExports.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                concurrentExports.decrementAndGet();
+                lock.release(permit, true, Collections.emptyList());
+                return permit.isOwner();
+            });
+            awaitWaiting(thread);
+        }
+        concurrentExports.decrementAndGet();
+        lock.release(running, true, Collections.emptyList());
+
+        for (Future<?> future : futures) {
+            assertEquals(Boolean.TRUE, future.get(10, TimeUnit.SECONDS));
+        }
+        // the exports of the process still run one after the other
+        assertEquals(1, maximum.get());
+    }
+
+    @Test
+    public void testInterruptedFollowUp() throws Exception {
+        ProcessExportLock.Permit running = lock.acquire(REQUEST);
+
+        AtomicReference<Thread> followUpThread = new AtomicReference<>();
+        Future<ProcessExportLock.Permit> followUp = executor.submit(() -> {
+            followUpThread.set(Thread.currentThread());
+            return lock.acquire(REQUEST);
+        });
+        awaitWaiting(followUpThread);
+
+        AtomicReference<Thread> coalescedThread = new AtomicReference<>();
+        Future<ProcessExportLock.Permit> coalesced = executor.submit(() -> {
+            coalescedThread.set(Thread.currentThread());
+            return lock.acquire(REQUEST);
+        });
+        awaitWaiting(coalescedThread);
+
+        followUpThread.get().interrupt();
+        try {
+            followUp.get(10, TimeUnit.SECONDS);
+            fail("The interrupted request must not get a permit");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        ProcessExportLock.Permit permit = coalesced.get(10, TimeUnit.SECONDS);
+        assertFalse(permit.isOwner());
+        assertFalse(permit.getResult());
+        assertEquals(Collections.singletonList(ProcessExportLock.PROBLEM_INTERRUPTED), permit.getProblems());
+
+        // later requests start a new export
+        lock.release(running, true, Collections.emptyList());
+        assertTrue(lock.acquire(REQUEST).isOwner());
+    }
+
+    private static void awaitWaiting(AtomicReference<Thread> thread) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Thread does not wait for the lock");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingDirectoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCommit() throws IOException {
+        Path target = folder.newFolder("export").toPath();
+        createFile(target.resolve("old.xml"), "old");
+
+        StagingDirectory staging = StagingDirectory.create(target);
+        createFile(staging.getPath().resolve("new.xml"), "new");
+        staging.commit();
+
+        assertTrue(Files.exists(target.resolve("new.xml")));
+        assertFalse(Files.exists(target.resolve("old.xml")));
+        assertFalse(Files.exists(staging.getPath()));
+    }
+
+    @Test
+    public void testCommitWithoutExistingTarget() throws IOException {
+        Path target = folder.getRoot().toPath().resolve("export");
+
+        StagingDirectory staging = StagingDirectory.create(target);
+        createFile(staging.getPath().resolve("new.xml"), "new");
+        staging.commit();
+
+        assertTrue(Files.exists(target.resolve("new.xml")));
+    }
+
+    @Test
+    public void testFailedCommitRestoresTarget() throws IOException {
+        Path target = folder.newFolder("export").toPath();
+        createFile(target.resolve("old.xml"), "old");
+
+        StagingDirectory staging = StagingDirectory.create(target);
+        // the staging folder cannot be moved into place, if it does not exist anymore
+        FileUtils.deleteDirectory(staging.getPath().toFile());
+        try {
+            staging.commit();
+            fail("commit must fail without staging folder");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals("old", new String(Files.readAllBytes(target.resolve("old.xml")), StandardCharsets.UTF_8));
+        // only the export folder is left, no hidden sibling
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private static void createFile(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
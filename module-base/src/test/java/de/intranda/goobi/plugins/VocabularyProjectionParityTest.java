@@ -0,0 +1,235 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.vocabulary.Definition;
+import org.goobi.vocabulary.Field;
+import org.goobi.vocabulary.VocabRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.UGHException;
+
+/**
+ * Compares the indexed vocabulary lookups of {@link VocabRecordView} and {@link VocabularyProjectionPlan} with the loops over all fields that
+ * were used before.
+ */
+public class VocabularyProjectionParityTest {
+
+    private static final int VOCABULARY_ID = 7;
+
+    private Prefs prefs;
+
+    @Before
+    public void setUp() throws UGHException {
+        prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/resources/entity.xml");
+    }
+
+    @Test
+    public void testProjectionWithEnglishLabel() throws UGHException {
+        // all fields use the label of the first english field
+        VocabRecord record = record(1, field(1, "Primary Role", "eng", "painter"), field(2, "Role principal", "fre", "peintre"),
+                field(3, "Hauptrolle", "ger", "Maler"));
+        assertProjection(record, record);
+    }
+
+    @Test
+    public void testProjectionWithoutEnglishLabel() throws UGHException {
+        // each field uses its own label
+        VocabRecord record = record(1, field(2, "Primary Role", "fre", "peintre"), field(3, "Primary Role", "ger", "Maler"),
+                field(4, "Unknown", "ger", "unbekannt"));
+        assertProjection(record, record);
+    }
+
+    @Test
+    public void testProjectionSkipsBlankValues() throws UGHException {
+        VocabRecord record = record(1, field(1, "Primary Role", "eng", "painter"), field(2, "Role principal", "fre", " "),
+                field(3, "Hauptrolle", "ger", null));
+        assertProjection(record, record);
+    }
+
+    @Test
+    public void testProjectionWithDuplicateDefinitions() throws UGHException {
+        VocabRecord record = record(1, field(1, "Primary Role", "eng", "painter"), field(3, "Hauptrolle", "ger", "Maler"),
+                field(3, "Hauptrolle", "ger", "Zeichner"));
+        assertProjection(record, record);
+    }
+
+    @Test
+    public void testProjectionOfOtherRecord() throws UGHException {
+        // the plan is created from the first record of the vocabulary and used for all records
+        VocabRecord first = record(1, field(1, "Primary Role", "eng", "painter"), field(2, "Role principal", "fre", "peintre"));
+        VocabRecord second = record(2, field(1, "Primary Role", "eng", "sculptor"), field(2, "Role principal", "fre", "sculpteur"));
+        assertProjection(first, second);
+    }
+
+    @Test
+    public void testPlanIsCreatedAgainForNewDefinitions() {
+        MetadataTypeRegistry types = MetadataTypeRegistry.forPrefs(prefs);
+        VocabRecordView first = new VocabRecordView(record(1, field(1, "Primary Role", "eng", "painter")));
+        VocabRecordView second = new VocabRecordView(record(2, field(1, "Primary Role", "eng", "sculptor")));
+        VocabRecordView extended =
+                new VocabRecordView(record(3, field(1, "Primary Role", "eng", "printer"), field(3, "Hauptrolle", "ger", "Drucker")));
+
+        VocabularyProjectionPlan plan = types.getProjectionPlan(first);
+        assertSame(plan, types.getProjectionPlan(second));
+        assertNotSame(plan, types.getProjectionPlan(extended));
+    }
+
+    @Test
+    public void testFieldLookups() {
+        VocabRecord record = record(1, field(1, "Relationship", "eng", "is teacher of"), field(2, "Relationship", "ger", "ist Lehrer von"),
+                field(3, "Reverse relationship", "eng", "is student of"), field(4, "Reverse relationship", "ger", "ist Schueler von"),
+                field(4, "Reverse relationship", "ger", "ist Schuelerin von"), field(5, "Location", null, "Luxembourg"),
+                field(5, "Location", null, "Luxemburg"), field(6, "Authority Value", null, "2960316"), field(7, "Duplicate", "eng", "is teacher of"));
+        VocabRecordView view = new VocabRecordView(record);
+
+        // last field with the definition label
+        assertEquals(baselineValueByDefinitionLabel(record, "Location"), view.getValueByDefinitionLabel("Location"));
+        assertEquals(baselineValueByDefinitionLabel(record, "Authority Value"), view.getValueByDefinitionLabel("Authority Value"));
+        assertEquals(baselineValueByDefinitionLabel(record, "Missing"), view.getValueByDefinitionLabel("Missing"));
+
+        // first field with the value
+        for (String value : Arrays.asList("is teacher of", "ist Schuelerin von", "Luxemburg", "missing")) {
+            assertEquals(baselineReverse(record, value), isReverse(view, value));
+        }
+
+        // last value of each language
+        assertEquals(baselineValuesByLanguage(record, "Relationship"), view.getValuesByLanguage("Relationship"));
+        assertEquals(baselineValuesByLanguage(record, "Reverse"), view.getValuesByLanguage("Reverse"));
+    }
+
+    private void assertProjection(VocabRecord planRecord, VocabRecord record) throws UGHException {
+        MetadataTypeRegistry.forPrefs(prefs).getProjectionPlan(new VocabRecordView(planRecord));
+
+        Metadata expected = anchor();
+        baselineProjection(record, expected);
+        Metadata actual = anchor();
+        VocabRecordView view = new VocabRecordView(record);
+        MetadataTypeRegistry.forPrefs(prefs).getProjectionPlan(view).apply(view, actual);
+
+        // the anchor and at least one projected value
+        assertTrue(expected.getParent().getAllMetadata().size() > 1);
+        assertEquals(values(expected.getParent()), values(actual.getParent()));
+    }
+
+    private Metadata anchor() throws UGHException {
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct person = dd.createDocStruct(prefs.getDocStrctTypeByName("Person"));
+        Metadata metadata = new Metadata(prefs.getMetadataTypeByName("PrimaryRole"));
+        metadata.setValue("painter");
+        person.addMetadata(metadata);
+        return metadata;
+    }
+
+    private static List<String> values(DocStruct docStruct) {
+        List<String> values = new ArrayList<>();
+        for (Metadata metadata : docStruct.getAllMetadata()) {
+            values.add(metadata.getType().getName() + "=" + metadata.getValue());
+        }
+        return values;
+    }
+
+    // the projection of the default case, as it was done before the plans existed
+    private void baselineProjection(VocabRecord vr, Metadata metadata) throws UGHException {
+        for (Field f : vr.getFields()) {
+            String recordLabel =
+                    vr.getFields().stream().filter(field -> "eng".equals(field.getLanguage())).map(Field::getLabel).findAny().orElse(null);
+            if (StringUtils.isBlank(recordLabel)) {
+                recordLabel = f.getLabel();
+            }
+            if (StringUtils.isNotBlank(f.getValue())) {
+                String metadataName;
+                Definition def = f.getDefinition();
+                if (StringUtils.isNotBlank(def.getLanguage())) {
+                    metadataName = "_" + recordLabel + "_" + def.getLanguage();
+                } else {
+                    metadataName = "_" + recordLabel;
+                }
+                metadataName = metadataName.replace(" ", "").toLowerCase();
+                MetadataType mdt = prefs.getMetadataTypeByName(metadataName);
+                if (mdt != null) {
+                    Metadata vocabMetadata = new Metadata(mdt);
+                    vocabMetadata.setValue(f.getValue());
+                    try {
+                        metadata.getParent().addMetadata(vocabMetadata);
+                    } catch (MetadataTypeNotAllowedException e) {
+                        // not allowed
+                    }
+                }
+            }
+        }
+    }
+
+    private static String baselineValueByDefinitionLabel(VocabRecord vr, String label) {
+        String value = null;
+        for (Field f : vr.getFields()) {
+            if (label.equals(f.getDefinition().getLabel())) {
+                value = f.getValue();
+            }
+        }
+        return value;
+    }
+
+    private static boolean baselineReverse(VocabRecord vr, String value) {
+        for (Field f : vr.getFields()) {
+            if (f.getValue().equals(value)) {
+                return f.getDefinition().getLabel().startsWith("Reverse");
+            }
+        }
+        return false;
+    }
+
+    private static boolean isReverse(VocabRecordView view, String value) {
+        Field field = view.getFieldByValue(value);
+        return field != null && field.getDefinition().getLabel().startsWith("Reverse");
+    }
+
+    private static Map<String, String> baselineValuesByLanguage(VocabRecord vr, String prefix) {
+        Map<String, String> values = new HashMap<>();
+        for (Field f : vr.getFields()) {
+            if (f.getDefinition().getLabel().startsWith(prefix) && StringUtils.isNotBlank(f.getDefinition().getLanguage())) {
+                values.put(f.getDefinition().getLanguage(), f.getValue());
+            }
+        }
+        return values;
+    }
+
+    private static VocabRecord record(int id, Field... fields) {
+        VocabRecord record = new VocabRecord();
+        record.setId(id);
+        record.setVocabularyId(VOCABULARY_ID);
+        record.setFields(new ArrayList<>(Arrays.asList(fields)));
+        return record;
+    }
+
+    private static Field field(int definitionId, String label, String language, String value) {
+        Definition definition = new Definition();
+        definition.setId(definitionId);
+        definition.setLabel(label);
+        definition.setLanguage(language);
+        Field field = new Field();
+        field.setLabel(label);
+        field.setLanguage(language);
+        field.setValue(value);
+        field.setDefinition(definition);
+        return field;
+    }
+}